@@ -0,0 +1,191 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+class BenchmarkRunner {
+
+    private final long warmupNanos;
+    private final long measureNanos;
+    private final int iterations;
+    private final Pattern filter;
+    private final List<BenchmarkResult> results = new ArrayList<>();
+    private double sink;
+
+    BenchmarkRunner(long warmupMillis, long measureMillis, int iterations, String filter) {
+        if (warmupMillis < 0 || measureMillis < 1 || iterations < 1) {
+            throw new IllegalArgumentException(String.format("Cannot benchmark with %d ms warmup, %d ms iterations and %d iterations", warmupMillis, measureMillis, iterations));
+        }
+        this.warmupNanos = warmupMillis * 1_000_000L;
+        this.measureNanos = measureMillis * 1_000_000L;
+        this.iterations = iterations;
+        this.filter = Pattern.compile(filter);
+    }
+
+    void throughput(String name, Map<String, Object> params, int samplesPerOp, BenchmarkOp op) throws Exception {
+        if (!shouldRun(name, params)) {
+            return;
+        }
+        runFor(op, warmupNanos);
+        double[] opsPerSec = new double[iterations];
+        for (int iter = 0; iter < iterations; ++iter) {
+            long start = System.nanoTime();
+            long ops = runFor(op, measureNanos);
+            opsPerSec[iter] = ops / ((System.nanoTime() - start) / 1e9);
+        }
+        BenchmarkResult result = new BenchmarkResult(name, params, "throughput");
+        double mean = mean(opsPerSec);
+        result.metrics.put("ops_per_sec", mean);
+        result.metrics.put("ops_per_sec_error", stdDev(opsPerSec, mean));
+        result.metrics.put("samples_per_sec", mean * samplesPerOp);
+        result.metrics.put("us_per_op", 1e6 / mean);
+        report(result);
+    }
+
+    void latency(String name, Map<String, Object> params, BenchmarkOp op) throws Exception {
+        if (!shouldRun(name, params)) {
+            return;
+        }
+        runFor(op, warmupNanos);
+        long[] nanos = new long[1 << 16];
+        int count = 0;
+        long end = System.nanoTime() + measureNanos * iterations;
+        while (System.nanoTime() < end) {
+            if (count == nanos.length) {
+                nanos = Arrays.copyOf(nanos, nanos.length * 2);
+            }
+            long start = System.nanoTime();
+            sink += op.run();
+            nanos[count++] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos, 0, count);
+        BenchmarkResult result = new BenchmarkResult(name, params, "latency");
+        result.metrics.put("count", (double) count);
+        result.metrics.put("p50_us", percentile(nanos, count, 0.50) / 1e3);
+        result.metrics.put("p90_us", percentile(nanos, count, 0.90) / 1e3);
+        result.metrics.put("p99_us", percentile(nanos, count, 0.99) / 1e3);
+        result.metrics.put("p999_us", percentile(nanos, count, 0.999) / 1e3);
+        result.metrics.put("max_us", nanos[count - 1] / 1e3);
+        report(result);
+    }
+
+    void record(String name, Map<String, Object> params, String mode, Map<String, Double> metrics) {
+        BenchmarkResult result = new BenchmarkResult(name, params, mode);
+        result.metrics.putAll(metrics);
+        report(result);
+    }
+
+    boolean shouldRun(String name, Map<String, Object> params) {
+        return filter.matcher(name + params).find();
+    }
+
+    private long runFor(BenchmarkOp op, long nanos) throws Exception {
+        long ops = 0;
+        long end = System.nanoTime() + nanos;
+        do {
+            for (int rep = 0; rep < 16; ++rep) {
+                sink += op.run();
+            }
+            ops += 16;
+        } while (System.nanoTime() < end);
+        return ops;
+    }
+
+    private void report(BenchmarkResult result) {
+        results.add(result);
+        System.out.println(result);
+    }
+
+    void writeJson(String path) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8))) {
+            out.println("{");
+            out.printf("  \"java_version\": \"%s\",\n", System.getProperty("java.version"));
+            out.printf("  \"available_processors\": %d,\n", Runtime.getRuntime().availableProcessors());
+            out.printf("  \"kernels\": \"%s\",\n", Matrix.getKernelsName());
+            out.printf("  \"timestamp\": %d,\n", System.currentTimeMillis());
+            out.println("  \"results\": [");
+            for (int res = 0; res < results.size(); ++res) {
+                out.print("    ");
+                out.print(results.get(res).toJson());
+                out.println(res + 1 < results.size() ? "," : "");
+            }
+            out.println("  ]");
+            out.println("}");
+        }
+        System.out.printf("Results written to %s\n", path);
+    }
+
+    private static double percentile(long[] sorted, int count, double fraction) {
+        return sorted[Math.min(count - 1, (int) Math.ceil(fraction * count) - 1)];
+    }
+
+    private static double mean(double[] vals) {
+        double sum = 0.0;
+        for (double val : vals) {
+            sum += val;
+        }
+        return sum / vals.length;
+    }
+
+    private static double stdDev(double[] vals, double mean) {
+        double sum = 0.0;
+        for (double val : vals) {
+            sum += (val - mean) * (val - mean);
+        }
+        return vals.length > 1 ? Math.sqrt(sum / (vals.length - 1)) : 0.0;
+    }
+}
+
+interface BenchmarkOp {
+
+    double run() throws Exception;
+}
+
+class BenchmarkResult {
+
+    final String name;
+    final Map<String, Object> params;
+    final String mode;
+    final Map<String, Double> metrics = new LinkedHashMap<>();
+
+    BenchmarkResult(String name, Map<String, Object> params, String mode) {
+        this.name = name;
+        this.params = params;
+        this.mode = mode;
+    }
+
+    String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append(String.format("{\"name\": \"%s\", \"mode\": \"%s\", \"params\": {", name, mode));
+        String sep = "";
+        for (Map.Entry<String, Object> param : params.entrySet()) {
+            Object val = param.getValue();
+            json.append(sep).append(String.format(Locale.ROOT, val instanceof Number ? "\"%s\": %s" : "\"%s\": \"%s\"", param.getKey(), val));
+            sep = ", ";
+        }
+        json.append("}, \"metrics\": {");
+        sep = "";
+        for (Map.Entry<String, Double> metric : metrics.entrySet()) {
+            json.append(sep).append(String.format(Locale.ROOT, "\"%s\": %.6g", metric.getKey(), metric.getValue()));
+            sep = ", ";
+        }
+        return json.append("}}").toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder string = new StringBuilder(String.format("%-28s %-40s", name, params));
+        for (Map.Entry<String, Double> metric : metrics.entrySet()) {
+            string.append(String.format(" %s=%.4g", metric.getKey(), metric.getValue()));
+        }
+        return string.toString();
+    }
+}
@@ -0,0 +1,374 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class Benchmarks {
+
+    static final int[][] LAYER_SHAPES = {{784, 128}, {128, 64}, {64, 10}};
+    static final int[] BATCH_SIZES = {1, 8, 32, 64, 128, 256};
+    static final int NUM_SAMPLES = 4096;
+    static final int NUM_TRAIN_SAMPLES = 3072;
+
+    public static void main(String[] args) throws Exception {
+        long warmupMillis = 500;
+        long measureMillis = 1000;
+        int iterations = 5;
+        String filter = "";
+        String jsonPath = "bench-results.json";
+        for (int arg = 0; arg + 1 < args.length; arg += 2) {
+            switch (args[arg]) {
+                case "--warmup":
+                    warmupMillis = Long.parseLong(args[arg + 1]);
+                    break;
+                case "--measure":
+                    measureMillis = Long.parseLong(args[arg + 1]);
+                    break;
+                case "--iterations":
+                    iterations = Integer.parseInt(args[arg + 1]);
+                    break;
+                case "--filter":
+                    filter = args[arg + 1];
+                    break;
+                case "--json":
+                    jsonPath = args[arg + 1];
+                    break;
+                default:
+                    throw new IllegalArgumentException(String.format("Unknown option %s", args[arg]));
+            }
+        }
+
+        BenchmarkRunner runner = new BenchmarkRunner(warmupMillis, measureMillis, iterations, filter);
+        Random randGen = new Random(42);
+        benchmarkMatrix(runner, randGen);
+        benchmarkLayers(runner, randGen);
+        benchmarkActivations(runner, randGen);
+        benchmarkNetwork(runner, randGen);
+        benchmarkPrecision(runner, randGen);
+        runner.writeJson(jsonPath);
+    }
+
+    private static void benchmarkMatrix(BenchmarkRunner runner, Random randGen) throws Exception {
+        for (int[] shape : LAYER_SHAPES) {
+            int numIn = shape[0];
+            int numOut = shape[1];
+            Matrix W = randomMatrix(numIn, numOut, randGen);
+            double[] vect = randomMatrix(1, numIn, randGen).getData();
+            runner.throughput("matrix.multiply", params("shape", numIn + "x" + numOut, "batch", 1), 1, () -> Matrix.multiply(vect, W)[0]);
+            for (int batchSize : BATCH_SIZES) {
+                Matrix X = randomMatrix(batchSize, numIn, randGen);
+                Matrix dZ = randomMatrix(batchSize, numOut, randGen);
+                Matrix Z = new Matrix(batchSize, numOut);
+                Matrix dW = new Matrix(numIn, numOut);
+                Matrix dX = new Matrix(batchSize, numIn);
+                for (Precision precision : Precision.values()) {
+                    Matrix pW = W.toPrecision(precision);
+                    Matrix pX = X.toPrecision(precision);
+                    Matrix pdZ = dZ.toPrecision(precision);
+                    Matrix pZ = Z.toPrecision(precision);
+                    Matrix pdW = dW.toPrecision(precision);
+                    Matrix pdX = dX.toPrecision(precision);
+                    Map<String, Object> params = params("shape", numIn + "x" + numOut, "batch", batchSize, "precision", precision.name());
+                    runner.throughput("matrix.gemm", params, batchSize, () -> {
+                        Matrix.gemm(pX, pW, pZ);
+                        return pZ.get(0, 0);
+                    });
+                    runner.throughput("matrix.gemmTransA", params, batchSize, () -> {
+                        Matrix.gemmTransA(pX, pdZ, pdW);
+                        return pdW.get(0, 0);
+                    });
+                    runner.throughput("matrix.gemmTransB", params, batchSize, () -> {
+                        Matrix.gemmTransB(pdZ, pW, pdX);
+                        return pdX.get(0, 0);
+                    });
+                }
+            }
+        }
+    }
+
+    private static void benchmarkLayers(BenchmarkRunner runner, Random randGen) throws Exception {
+        for (int[] shape : LAYER_SHAPES) {
+            int numIn = shape[0];
+            int numOut = shape[1];
+            Layer layer = Layer.createLayer(numOut, numIn, 0.01, true);
+            LayerWorkspace ws = layer.createWorkspace(BATCH_SIZES[BATCH_SIZES.length - 1]);
+            LayerWorkspace prevWs = new LayerWorkspace(numIn, numIn, BATCH_SIZES[BATCH_SIZES.length - 1], Precision.FLOAT64);
+            for (int batchSize : BATCH_SIZES) {
+                Matrix X = randomMatrix(batchSize, numIn, randGen);
+                Matrix dEdY = randomMatrix(batchSize, numOut, randGen);
+                Map<String, Object> params = params("shape", numIn + "x" + numOut, "batch", batchSize);
+                runner.throughput("layer.feedforward", params, batchSize, () -> layer.feedforward(X, ws, ActivFunc.SIGMOID).get(0, 0));
+                runner.throughput("layer.computeGradients", params, batchSize, () -> {
+                    layer.computeGradients(dEdY, X, ws);
+                    return ws.dEdB[0];
+                });
+                runner.throughput("layer.backpropagate", params, batchSize, () -> layer.backpropagate(dEdY, prevWs, ActivFunc.SIGMOID).get(0, 0));
+            }
+        }
+    }
+
+    private static void benchmarkActivations(BenchmarkRunner runner, Random randGen) throws Exception {
+        for (ActivFunc activFunc : ActivFunc.values()) {
+            for (int batchSize : BATCH_SIZES) {
+                Matrix in = randomMatrix(batchSize, 128, randGen);
+                Matrix grad = randomMatrix(batchSize, 128, randGen);
+                Matrix out = new Matrix(batchSize, 128);
+                Matrix res = new Matrix(batchSize, 128);
+                ActivFunc.getActivFuncOf(activFunc, in, out);
+                Map<String, Object> params = params("func", activFunc.name(), "width", 128, "batch", batchSize);
+                runner.throughput("activ.getActivFuncOf", params, batchSize, () -> {
+                    ActivFunc.getActivFuncOf(activFunc, in, res);
+                    return res.get(0, 0);
+                });
+                runner.throughput("activ.backpropagate", params, batchSize, () -> {
+                    ActivFunc.backpropagate(activFunc, out, grad, res);
+                    return res.get(0, 0);
+                });
+            }
+        }
+    }
+
+    private static void benchmarkNetwork(BenchmarkRunner runner, Random randGen) throws Exception {
+        Network network = createNetwork(0.01);
+        Dataset dataset = createDataset(randGen);
+
+        double[] sample = new double[784];
+        int[] next = new int[1];
+        runner.throughput("network.readSample", params("dataset", "packed"), 1, () -> network.readSample(dataset, next[0]++ % NUM_SAMPLES, sample, 0));
+        CachedDataset cached = new CachedDataset(dataset, network.getScaler(), Network.getDefaultCacheBudget(), 0);
+        runner.throughput("network.readSample", params("dataset", "cached"), 1, () -> network.readSample(cached, next[0]++ % NUM_SAMPLES, sample, 0));
+        cached.close();
+
+        Matrix[] inputs = new Matrix[NUM_SAMPLES];
+        for (int file = 0; file < NUM_SAMPLES; ++file) {
+            inputs[file] = new Matrix(1, 784);
+            network.readSample(dataset, file, inputs[file].getData(), 0);
+        }
+        float[][] rawInputs = readRawInputs(dataset);
+        for (Precision precision : Precision.values()) {
+            network.setPrecision(precision);
+            for (int batchSize : BATCH_SIZES) {
+                Matrix in = new Matrix(batchSize, 784);
+                Matrix actual = new Matrix(batchSize, 10);
+                for (int row = 0; row < batchSize; ++row) {
+                    int ans = network.readSample(dataset, row, in.getData(), in.indexOf(row, 0));
+                    actual.set(row, ans, 1.0);
+                }
+                runner.throughput("network.learn", params("batch", batchSize, "precision", precision.name()), batchSize, () -> network.learn(in, actual));
+            }
+            runner.latency("network.predict", params("batch", 1, "precision", precision.name()), () -> network.displayAns(inputs[next[0]++ % NUM_SAMPLES]));
+
+            Predictor predictor = network.createPredictor();
+            runner.latency("predictor.predict", params("batch", 1, "precision", precision.name()), () -> predictor.predict(rawInputs[next[0]++ % NUM_SAMPLES]));
+            for (int batchSize : BATCH_SIZES) {
+                float[][] batch = new float[batchSize][];
+                System.arraycopy(rawInputs, 0, batch, 0, batchSize);
+                runner.throughput("predictor.predictBatch", params("batch", batchSize, "precision", precision.name()), batchSize, () -> predictor.predictBatch(batch)[0]);
+            }
+        }
+
+        int optimizerBatch = BATCH_SIZES[BATCH_SIZES.length - 1];
+        Matrix optimizerIn = new Matrix(optimizerBatch, 784);
+        Matrix optimizerActual = new Matrix(optimizerBatch, 10);
+        for (int row = 0; row < optimizerBatch; ++row) {
+            int ans = network.readSample(dataset, row, optimizerIn.getData(), optimizerIn.indexOf(row, 0));
+            optimizerActual.set(row, ans, 1.0);
+        }
+        for (OptimizerType type : OptimizerType.values()) {
+            network.setOptimizer(Optimizer.createOptimizer(type));
+            runner.throughput("network.learn", params("batch", optimizerBatch, "precision", network.getPrecision().name(), "optimizer", type.name()), optimizerBatch, () -> network.learn(optimizerIn, optimizerActual));
+        }
+        network.setOptimizer(Optimizer.createOptimizer(OptimizerType.SGD));
+
+        File serFile = File.createTempFile("bench-model", ".ser");
+        File modelFile = File.createTempFile("bench-model", ".nnm");
+        serFile.deleteOnExit();
+        modelFile.deleteOnExit();
+        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(serFile))) {
+            out.writeObject(network);
+        }
+        ModelFile.write(network, modelFile);
+        runner.latency("model.load", params("format", "serialized"), () -> {
+            try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(serFile)))) {
+                return ((Network) in.readObject()).getLayers().length;
+            }
+        });
+        runner.latency("model.load", params("format", "binary"), () -> ModelFile.read(modelFile).getLayers().length);
+        runner.latency("model.load", params("format", "mapped"), () -> ModelFile.map(modelFile).getNumOutputs());
+
+        Predictor mapped = ModelFile.map(modelFile);
+        runner.latency("predictor.predict", params("batch", 1, "precision", network.getPrecision().name(), "weights", "mapped"), () -> mapped.predict(rawInputs[next[0]++ % NUM_SAMPLES]));
+        for (int batchSize : BATCH_SIZES) {
+            float[][] batch = new float[batchSize][];
+            System.arraycopy(rawInputs, 0, batch, 0, batchSize);
+            runner.throughput("predictor.predictBatch", params("batch", batchSize, "precision", network.getPrecision().name(), "weights", "mapped"), batchSize, () -> mapped.predictBatch(batch)[0]);
+        }
+
+        QuantizedPredictor quantized = network.quantize(dataset, 1000, 42);
+        runner.latency("predictor.predict", params("batch", 1, "precision", "INT8"), () -> quantized.predict(rawInputs[next[0]++ % NUM_SAMPLES]));
+        for (int batchSize : BATCH_SIZES) {
+            float[][] batch = new float[batchSize][];
+            System.arraycopy(rawInputs, 0, batch, 0, batchSize);
+            runner.throughput("predictor.predictBatch", params("batch", batchSize, "precision", "INT8"), batchSize, () -> quantized.predictBatch(batch)[0]);
+        }
+    }
+
+    private static void benchmarkPrecision(BenchmarkRunner runner, Random randGen) throws Exception {
+        int epochs = 5;
+        int batchSize = 32;
+        Map<String, Object> params = params("epochs", epochs, "batch", batchSize, "train", NUM_TRAIN_SAMPLES, "test", NUM_SAMPLES - NUM_TRAIN_SAMPLES);
+        if (!runner.shouldRun("precision.accuracy", params)) {
+            return;
+        }
+        Dataset dataset = createDataset(randGen);
+        Network network = createNetwork(3.0);
+        float[][] rawInputs = readRawInputs(dataset);
+        int[] labels = new int[NUM_SAMPLES];
+        double[] sample = new double[784];
+        for (int file = 0; file < NUM_SAMPLES; ++file) {
+            labels[file] = dataset.readSample(file, sample, 0);
+        }
+
+        Map<String, Double> metrics = new LinkedHashMap<>();
+        int[][] preds = new int[Precision.values().length][];
+        for (Precision precision : Precision.values()) {
+            Network copy = copyNetwork(network);
+            copy.setPrecision(precision);
+            Matrix in = new Matrix(batchSize, 784);
+            Matrix actual = new Matrix(batchSize, 10);
+            long start = System.nanoTime();
+            for (int epoch = 0; epoch < epochs; ++epoch) {
+                for (int first = 0; first + batchSize <= NUM_TRAIN_SAMPLES; first += batchSize) {
+                    Matrix.fill(actual, 0.0);
+                    for (int row = 0; row < batchSize; ++row) {
+                        int ans = copy.readSample(dataset, first + row, in.getData(), in.indexOf(row, 0));
+                        actual.set(row, ans, 1.0);
+                    }
+                    copy.learn(in, actual);
+                }
+            }
+            double trainSecs = (System.nanoTime() - start) / 1e9;
+            float[][] testInputs = Arrays.copyOfRange(rawInputs, NUM_TRAIN_SAMPLES, NUM_SAMPLES);
+            int[] pred = copy.createPredictor().predictBatch(testInputs);
+            int numCorrect = 0;
+            for (int file = 0; file < pred.length; ++file) {
+                if (pred[file] == labels[NUM_TRAIN_SAMPLES + file]) {
+                    ++numCorrect;
+                }
+            }
+            preds[precision.ordinal()] = pred;
+            String key = precision.name().toLowerCase();
+            metrics.put("accuracy_" + key, numCorrect / (double) pred.length);
+            metrics.put("train_secs_" + key, trainSecs);
+            if (precision == Precision.FLOAT64) {
+                int[] quantPred = copy.quantize(dataset, NUM_TRAIN_SAMPLES, 42).predictBatch(testInputs);
+                int numQuantCorrect = 0;
+                int numQuantAgree = 0;
+                for (int file = 0; file < quantPred.length; ++file) {
+                    if (quantPred[file] == labels[NUM_TRAIN_SAMPLES + file]) {
+                        ++numQuantCorrect;
+                    }
+                    if (quantPred[file] == pred[file]) {
+                        ++numQuantAgree;
+                    }
+                }
+                metrics.put("accuracy_int8", numQuantCorrect / (double) quantPred.length);
+                metrics.put("prediction_agreement_int8", numQuantAgree / (double) quantPred.length);
+            }
+        }
+        int numAgree = 0;
+        for (int file = 0; file < preds[0].length; ++file) {
+            if (preds[0][file] == preds[1][file]) {
+                ++numAgree;
+            }
+        }
+        metrics.put("prediction_agreement", numAgree / (double) preds[0].length);
+        runner.record("precision.accuracy", params, "accuracy", metrics);
+    }
+
+    private static Network createNetwork(double learnRate) throws Exception {
+        return Network.createNetwork(new int[]{128, 64, 10}, Loss.CROSS_ENTROPY, new ActivFunc[]{ActivFunc.SIGMOID, ActivFunc.SIGMOID, ActivFunc.SOFTMAX}, 784, learnRate, "", 1, 1 / 255.0, Precision.FLOAT64);
+    }
+
+    private static Network copyNetwork(Network network) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(network);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (Network) in.readObject();
+        }
+    }
+
+    private static float[][] readRawInputs(Dataset dataset) throws Exception {
+        double[] sample = new double[784];
+        float[][] rawInputs = new float[NUM_SAMPLES][784];
+        for (int file = 0; file < NUM_SAMPLES; ++file) {
+            dataset.readSample(file, sample, 0);
+            for (int elem = 0; elem < 784; ++elem) {
+                rawInputs[file][elem] = (float) sample[elem];
+            }
+        }
+        return rawInputs;
+    }
+
+    private static Dataset createDataset(Random randGen) throws Exception {
+        byte[] pixels = new byte[NUM_SAMPLES * 784];
+        randGen.nextBytes(pixels);
+        for (int file = 0; file < NUM_SAMPLES; ++file) {
+            int band = (file % 10) * 78;
+            for (int elem = band; elem < band + 78; ++elem) {
+                pixels[file * 784 + elem] |= (byte) 0x80;
+            }
+        }
+        Dataset source = new Dataset() {
+            @Override
+            public int size() {
+                return NUM_SAMPLES;
+            }
+
+            @Override
+            public int getNumFeatures() {
+                return 784;
+            }
+
+            @Override
+            public int readSample(int index, double[] in, int offset) {
+                for (int elem = 0; elem < 784; ++elem) {
+                    in[offset + elem] = pixels[index * 784 + elem] & 0xFF;
+                }
+                return index % 10;
+            }
+        };
+        File file = File.createTempFile("bench", ".pk");
+        file.deleteOnExit();
+        PackedDataset.write(source, 28, 28, file);
+        System.out.println();
+        return Dataset.open(file);
+    }
+
+    private static Matrix randomMatrix(int rows, int cols, Random randGen) {
+        Matrix mat = new Matrix(rows, cols);
+        double[] data = mat.getData();
+        for (int elem = 0; elem < data.length; ++elem) {
+            data[elem] = randGen.nextGaussian();
+        }
+        return mat;
+    }
+
+    private static Map<String, Object> params(Object ... keyVals) {
+        Map<String, Object> params = new LinkedHashMap<>();
+        for (int elem = 0; elem + 1 < keyVals.length; elem += 2) {
+            params.put((String) keyVals[elem], keyVals[elem + 1]);
+        }
+        return params;
+    }
+}
@@ -0,0 +1,7 @@
+#!/bin/sh
+set -e
+cd "$(dirname "$0")/.."
+rm -rf out/bench
+mkdir -p out/bench
+javac -d out/bench src/*.java bench/*.java
+java -cp out/bench Benchmarks "$@"
@@ -0,0 +1,382 @@
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+class VectorKernels implements Kernels {
+
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Byte> BYTES = VectorSpecies.of(byte.class, VectorShape.forBitSize(INTS.length() * Byte.SIZE));
+    private static final double LOG2_E = 1.4426950408889634;
+    private static final double LN2_HI = 0.6931471803691238;
+    private static final double LN2_LO = 1.9082149292705877e-10;
+    private static final float LN2_HI_FLOAT = 0.693359375f;
+    private static final float LN2_LO_FLOAT = -2.12194440e-4f;
+    private static final double ROUNDER = 6755399441055744.0;
+    private static final float ROUNDER_FLOAT = 12582912.0f;
+    private static final double EXP_MIN = -708.0;
+    private static final double EXP_MAX = 709.0;
+    private static final float EXP_MIN_FLOAT = -87.0f;
+    private static final float EXP_MAX_FLOAT = 88.0f;
+    private final ScalarKernels scalar = new ScalarKernels();
+
+    @Override
+    public String getName() {
+        return String.format("vector (%d-bit, %d doubles / %d floats per lane group)", DOUBLES.vectorBitSize(), DOUBLES.length(), FLOATS.length());
+    }
+
+    @Override
+    public void axpy(double alpha, double[] vectX, int xOffset, double[] vectY, int yOffset, int num) {
+        int bound = DOUBLES.loopBound(num);
+        int elem = 0;
+        DoubleVector a = DoubleVector.broadcast(DOUBLES, alpha);
+        for (; elem < bound; elem += DOUBLES.length()) {
+            DoubleVector x = DoubleVector.fromArray(DOUBLES, vectX, xOffset + elem);
+            DoubleVector y = DoubleVector.fromArray(DOUBLES, vectY, yOffset + elem);
+            x.fma(a, y).intoArray(vectY, yOffset + elem);
+        }
+        scalar.axpy(alpha, vectX, xOffset + elem, vectY, yOffset + elem, num - elem);
+    }
+
+    @Override
+    public void axpy(float alpha, float[] vectX, int xOffset, float[] vectY, int yOffset, int num) {
+        int bound = FLOATS.loopBound(num);
+        int elem = 0;
+        FloatVector a = FloatVector.broadcast(FLOATS, alpha);
+        for (; elem < bound; elem += FLOATS.length()) {
+            FloatVector x = FloatVector.fromArray(FLOATS, vectX, xOffset + elem);
+            FloatVector y = FloatVector.fromArray(FLOATS, vectY, yOffset + elem);
+            x.fma(a, y).intoArray(vectY, yOffset + elem);
+        }
+        scalar.axpy(alpha, vectX, xOffset + elem, vectY, yOffset + elem, num - elem);
+    }
+
+    @Override
+    public void axpy4(double a0, double a1, double a2, double a3, double[] vect, int vectOffset, double[] res, int res0, int res1, int res2, int res3, int num) {
+        int bound = DOUBLES.loopBound(num);
+        int elem = 0;
+        DoubleVector v0 = DoubleVector.broadcast(DOUBLES, a0);
+        DoubleVector v1 = DoubleVector.broadcast(DOUBLES, a1);
+        DoubleVector v2 = DoubleVector.broadcast(DOUBLES, a2);
+        DoubleVector v3 = DoubleVector.broadcast(DOUBLES, a3);
+        for (; elem < bound; elem += DOUBLES.length()) {
+            DoubleVector val = DoubleVector.fromArray(DOUBLES, vect, vectOffset + elem);
+            val.fma(v0, DoubleVector.fromArray(DOUBLES, res, res0 + elem)).intoArray(res, res0 + elem);
+            val.fma(v1, DoubleVector.fromArray(DOUBLES, res, res1 + elem)).intoArray(res, res1 + elem);
+            val.fma(v2, DoubleVector.fromArray(DOUBLES, res, res2 + elem)).intoArray(res, res2 + elem);
+            val.fma(v3, DoubleVector.fromArray(DOUBLES, res, res3 + elem)).intoArray(res, res3 + elem);
+        }
+        scalar.axpy4(a0, a1, a2, a3, vect, vectOffset + elem, res, res0 + elem, res1 + elem, res2 + elem, res3 + elem, num - elem);
+    }
+
+    @Override
+    public void axpy4(float a0, float a1, float a2, float a3, float[] vect, int vectOffset, float[] res, int res0, int res1, int res2, int res3, int num) {
+        int bound = FLOATS.loopBound(num);
+        int elem = 0;
+        FloatVector v0 = FloatVector.broadcast(FLOATS, a0);
+        FloatVector v1 = FloatVector.broadcast(FLOATS, a1);
+        FloatVector v2 = FloatVector.broadcast(FLOATS, a2);
+        FloatVector v3 = FloatVector.broadcast(FLOATS, a3);
+        for (; elem < bound; elem += FLOATS.length()) {
+            FloatVector val = FloatVector.fromArray(FLOATS, vect, vectOffset + elem);
+            val.fma(v0, FloatVector.fromArray(FLOATS, res, res0 + elem)).intoArray(res, res0 + elem);
+            val.fma(v1, FloatVector.fromArray(FLOATS, res, res1 + elem)).intoArray(res, res1 + elem);
+            val.fma(v2, FloatVector.fromArray(FLOATS, res, res2 + elem)).intoArray(res, res2 + elem);
+            val.fma(v3, FloatVector.fromArray(FLOATS, res, res3 + elem)).intoArray(res, res3 + elem);
+        }
+        scalar.axpy4(a0, a1, a2, a3, vect, vectOffset + elem, res, res0 + elem, res1 + elem, res2 + elem, res3 + elem, num - elem);
+    }
+
+    @Override
+    public void axpy(double alpha, ByteBuffer vectX, int xOffset, double[] vectY, int yOffset, int num) {
+        int bound = DOUBLES.loopBound(num);
+        int elem = 0;
+        DoubleVector a = DoubleVector.broadcast(DOUBLES, alpha);
+        for (; elem < bound; elem += DOUBLES.length()) {
+            DoubleVector x = DoubleVector.fromByteBuffer(DOUBLES, vectX, (xOffset + elem) * Double.BYTES, ByteOrder.LITTLE_ENDIAN);
+            DoubleVector y = DoubleVector.fromArray(DOUBLES, vectY, yOffset + elem);
+            x.fma(a, y).intoArray(vectY, yOffset + elem);
+        }
+        scalar.axpy(alpha, vectX, xOffset + elem, vectY, yOffset + elem, num - elem);
+    }
+
+    @Override
+    public void axpy(float alpha, ByteBuffer vectX, int xOffset, float[] vectY, int yOffset, int num) {
+        int bound = FLOATS.loopBound(num);
+        int elem = 0;
+        FloatVector a = FloatVector.broadcast(FLOATS, alpha);
+        for (; elem < bound; elem += FLOATS.length()) {
+            FloatVector x = FloatVector.fromByteBuffer(FLOATS, vectX, (xOffset + elem) * Float.BYTES, ByteOrder.LITTLE_ENDIAN);
+            FloatVector y = FloatVector.fromArray(FLOATS, vectY, yOffset + elem);
+            x.fma(a, y).intoArray(vectY, yOffset + elem);
+        }
+        scalar.axpy(alpha, vectX, xOffset + elem, vectY, yOffset + elem, num - elem);
+    }
+
+    @Override
+    public void axpy4(double a0, double a1, double a2, double a3, ByteBuffer vect, int vectOffset, double[] res, int res0, int res1, int res2, int res3, int num) {
+        int bound = DOUBLES.loopBound(num);
+        int elem = 0;
+        DoubleVector v0 = DoubleVector.broadcast(DOUBLES, a0);
+        DoubleVector v1 = DoubleVector.broadcast(DOUBLES, a1);
+        DoubleVector v2 = DoubleVector.broadcast(DOUBLES, a2);
+        DoubleVector v3 = DoubleVector.broadcast(DOUBLES, a3);
+        for (; elem < bound; elem += DOUBLES.length()) {
+            DoubleVector val = DoubleVector.fromByteBuffer(DOUBLES, vect, (vectOffset + elem) * Double.BYTES, ByteOrder.LITTLE_ENDIAN);
+            val.fma(v0, DoubleVector.fromArray(DOUBLES, res, res0 + elem)).intoArray(res, res0 + elem);
+            val.fma(v1, DoubleVector.fromArray(DOUBLES, res, res1 + elem)).intoArray(res, res1 + elem);
+            val.fma(v2, DoubleVector.fromArray(DOUBLES, res, res2 + elem)).intoArray(res, res2 + elem);
+            val.fma(v3, DoubleVector.fromArray(DOUBLES, res, res3 + elem)).intoArray(res, res3 + elem);
+        }
+        scalar.axpy4(a0, a1, a2, a3, vect, vectOffset + elem, res, res0 + elem, res1 + elem, res2 + elem, res3 + elem, num - elem);
+    }
+
+    @Override
+    public void axpy4(float a0, float a1, float a2, float a3, ByteBuffer vect, int vectOffset, float[] res, int res0, int res1, int res2, int res3, int num) {
+        int bound = FLOATS.loopBound(num);
+        int elem = 0;
+        FloatVector v0 = FloatVector.broadcast(FLOATS, a0);
+        FloatVector v1 = FloatVector.broadcast(FLOATS, a1);
+        FloatVector v2 = FloatVector.broadcast(FLOATS, a2);
+        FloatVector v3 = FloatVector.broadcast(FLOATS, a3);
+        for (; elem < bound; elem += FLOATS.length()) {
+            FloatVector val = FloatVector.fromByteBuffer(FLOATS, vect, (vectOffset + elem) * Float.BYTES, ByteOrder.LITTLE_ENDIAN);
+            val.fma(v0, FloatVector.fromArray(FLOATS, res, res0 + elem)).intoArray(res, res0 + elem);
+            val.fma(v1, FloatVector.fromArray(FLOATS, res, res1 + elem)).intoArray(res, res1 + elem);
+            val.fma(v2, FloatVector.fromArray(FLOATS, res, res2 + elem)).intoArray(res, res2 + elem);
+            val.fma(v3, FloatVector.fromArray(FLOATS, res, res3 + elem)).intoArray(res, res3 + elem);
+        }
+        scalar.axpy4(a0, a1, a2, a3, vect, vectOffset + elem, res, res0 + elem, res1 + elem, res2 + elem, res3 + elem, num - elem);
+    }
+
+    @Override
+    public double dot(double[] vect1, int offset1, double[] vect2, int offset2, int num) {
+        int bound = DOUBLES.loopBound(num);
+        int elem = 0;
+        DoubleVector sum = DoubleVector.zero(DOUBLES);
+        for (; elem < bound; elem += DOUBLES.length()) {
+            sum = DoubleVector.fromArray(DOUBLES, vect1, offset1 + elem).fma(DoubleVector.fromArray(DOUBLES, vect2, offset2 + elem), sum);
+        }
+        return sum.reduceLanes(VectorOperators.ADD) + scalar.dot(vect1, offset1 + elem, vect2, offset2 + elem, num - elem);
+    }
+
+    @Override
+    public float dot(float[] vect1, int offset1, float[] vect2, int offset2, int num) {
+        int bound = FLOATS.loopBound(num);
+        int elem = 0;
+        FloatVector sum = FloatVector.zero(FLOATS);
+        for (; elem < bound; elem += FLOATS.length()) {
+            sum = FloatVector.fromArray(FLOATS, vect1, offset1 + elem).fma(FloatVector.fromArray(FLOATS, vect2, offset2 + elem), sum);
+        }
+        return sum.reduceLanes(VectorOperators.ADD) + scalar.dot(vect1, offset1 + elem, vect2, offset2 + elem, num - elem);
+    }
+
+    @Override
+    public void dot4(double[] mat, int base0, int base1, int base2, int base3, double[] vect, int vectOffset, int num, double[] res, int resOffset) {
+        int bound = DOUBLES.loopBound(num);
+        int elem = 0;
+        DoubleVector sum0 = DoubleVector.zero(DOUBLES);
+        DoubleVector sum1 = sum0, sum2 = sum0, sum3 = sum0;
+        for (; elem < bound; elem += DOUBLES.length()) {
+            DoubleVector val = DoubleVector.fromArray(DOUBLES, vect, vectOffset + elem);
+            sum0 = DoubleVector.fromArray(DOUBLES, mat, base0 + elem).fma(val, sum0);
+            sum1 = DoubleVector.fromArray(DOUBLES, mat, base1 + elem).fma(val, sum1);
+            sum2 = DoubleVector.fromArray(DOUBLES, mat, base2 + elem).fma(val, sum2);
+            sum3 = DoubleVector.fromArray(DOUBLES, mat, base3 + elem).fma(val, sum3);
+        }
+        scalar.dot4(mat, base0 + elem, base1 + elem, base2 + elem, base3 + elem, vect, vectOffset + elem, num - elem, res, resOffset);
+        res[resOffset] += sum0.reduceLanes(VectorOperators.ADD);
+        res[resOffset + 1] += sum1.reduceLanes(VectorOperators.ADD);
+        res[resOffset + 2] += sum2.reduceLanes(VectorOperators.ADD);
+        res[resOffset + 3] += sum3.reduceLanes(VectorOperators.ADD);
+    }
+
+    @Override
+    public void dot4(float[] mat, int base0, int base1, int base2, int base3, float[] vect, int vectOffset, int num, float[] res, int resOffset) {
+        int bound = FLOATS.loopBound(num);
+        int elem = 0;
+        FloatVector sum0 = FloatVector.zero(FLOATS);
+        FloatVector sum1 = sum0, sum2 = sum0, sum3 = sum0;
+        for (; elem < bound; elem += FLOATS.length()) {
+            FloatVector val = FloatVector.fromArray(FLOATS, vect, vectOffset + elem);
+            sum0 = FloatVector.fromArray(FLOATS, mat, base0 + elem).fma(val, sum0);
+            sum1 = FloatVector.fromArray(FLOATS, mat, base1 + elem).fma(val, sum1);
+            sum2 = FloatVector.fromArray(FLOATS, mat, base2 + elem).fma(val, sum2);
+            sum3 = FloatVector.fromArray(FLOATS, mat, base3 + elem).fma(val, sum3);
+        }
+        scalar.dot4(mat, base0 + elem, base1 + elem, base2 + elem, base3 + elem, vect, vectOffset + elem, num - elem, res, resOffset);
+        res[resOffset] += sum0.reduceLanes(VectorOperators.ADD);
+        res[resOffset + 1] += sum1.reduceLanes(VectorOperators.ADD);
+        res[resOffset + 2] += sum2.reduceLanes(VectorOperators.ADD);
+        res[resOffset + 3] += sum3.reduceLanes(VectorOperators.ADD);
+    }
+
+    @Override
+    public int dot(byte[] vect1, int offset1, byte[] vect2, int offset2, int num) {
+        int bound = BYTES.loopBound(num);
+        int elem = 0;
+        IntVector sum = IntVector.zero(INTS);
+        for (; elem < bound; elem += BYTES.length()) {
+            IntVector val1 = (IntVector) ByteVector.fromArray(BYTES, vect1, offset1 + elem).convertShape(VectorOperators.B2I, INTS, 0);
+            IntVector val2 = (IntVector) ByteVector.fromArray(BYTES, vect2, offset2 + elem).convertShape(VectorOperators.B2I, INTS, 0);
+            sum = val1.mul(val2).add(sum);
+        }
+        return sum.reduceLanes(VectorOperators.ADD) + scalar.dot(vect1, offset1 + elem, vect2, offset2 + elem, num - elem);
+    }
+
+    @Override
+    public void dot4(byte[] mat, int base0, int base1, int base2, int base3, byte[] vect, int vectOffset, int num, int[] res, int resOffset) {
+        int bound = BYTES.loopBound(num);
+        int elem = 0;
+        IntVector sum0 = IntVector.zero(INTS);
+        IntVector sum1 = sum0, sum2 = sum0, sum3 = sum0;
+        for (; elem < bound; elem += BYTES.length()) {
+            IntVector val = (IntVector) ByteVector.fromArray(BYTES, vect, vectOffset + elem).convertShape(VectorOperators.B2I, INTS, 0);
+            sum0 = ((IntVector) ByteVector.fromArray(BYTES, mat, base0 + elem).convertShape(VectorOperators.B2I, INTS, 0)).mul(val).add(sum0);
+            sum1 = ((IntVector) ByteVector.fromArray(BYTES, mat, base1 + elem).convertShape(VectorOperators.B2I, INTS, 0)).mul(val).add(sum1);
+            sum2 = ((IntVector) ByteVector.fromArray(BYTES, mat, base2 + elem).convertShape(VectorOperators.B2I, INTS, 0)).mul(val).add(sum2);
+            sum3 = ((IntVector) ByteVector.fromArray(BYTES, mat, base3 + elem).convertShape(VectorOperators.B2I, INTS, 0)).mul(val).add(sum3);
+        }
+        scalar.dot4(mat, base0 + elem, base1 + elem, base2 + elem, base3 + elem, vect, vectOffset + elem, num - elem, res, resOffset);
+        res[resOffset] += sum0.reduceLanes(VectorOperators.ADD);
+        res[resOffset + 1] += sum1.reduceLanes(VectorOperators.ADD);
+        res[resOffset + 2] += sum2.reduceLanes(VectorOperators.ADD);
+        res[resOffset + 3] += sum3.reduceLanes(VectorOperators.ADD);
+    }
+
+    @Override
+    public void scale(double alpha, double[] vect, int offset, double[] res, int resOffset, int num) {
+        int bound = DOUBLES.loopBound(num);
+        int elem = 0;
+        for (; elem < bound; elem += DOUBLES.length()) {
+            DoubleVector.fromArray(DOUBLES, vect, offset + elem).mul(alpha).intoArray(res, resOffset + elem);
+        }
+        scalar.scale(alpha, vect, offset + elem, res, resOffset + elem, num - elem);
+    }
+
+    @Override
+    public void scale(float alpha, float[] vect, int offset, float[] res, int resOffset, int num) {
+        int bound = FLOATS.loopBound(num);
+        int elem = 0;
+        for (; elem < bound; elem += FLOATS.length()) {
+            FloatVector.fromArray(FLOATS, vect, offset + elem).mul(alpha).intoArray(res, resOffset + elem);
+        }
+        scalar.scale(alpha, vect, offset + elem, res, resOffset + elem, num - elem);
+    }
+
+    @Override
+    public void sigmoid(double[] in, int inOffset, double[] res, int resOffset, int num) {
+        int bound = DOUBLES.loopBound(num);
+        int elem = 0;
+        DoubleVector one = DoubleVector.broadcast(DOUBLES, 1.0);
+        for (; elem < bound; elem += DOUBLES.length()) {
+            DoubleVector exp = exp(DoubleVector.fromArray(DOUBLES, in, inOffset + elem).neg());
+            one.div(exp.add(1.0)).intoArray(res, resOffset + elem);
+        }
+        scalar.sigmoid(in, inOffset + elem, res, resOffset + elem, num - elem);
+    }
+
+    @Override
+    public void sigmoid(float[] in, int inOffset, float[] res, int resOffset, int num) {
+        int bound = FLOATS.loopBound(num);
+        int elem = 0;
+        FloatVector one = FloatVector.broadcast(FLOATS, 1.0f);
+        for (; elem < bound; elem += FLOATS.length()) {
+            FloatVector exp = exp(FloatVector.fromArray(FLOATS, in, inOffset + elem).neg());
+            one.div(exp.add(1.0f)).intoArray(res, resOffset + elem);
+        }
+        scalar.sigmoid(in, inOffset + elem, res, resOffset + elem, num - elem);
+    }
+
+    @Override
+    public void sigmoidBackward(double[] out, int outOffset, double[] grad, int gradOffset, double[] res, int resOffset, int num) {
+        int bound = DOUBLES.loopBound(num);
+        int elem = 0;
+        for (; elem < bound; elem += DOUBLES.length()) {
+            DoubleVector val = DoubleVector.fromArray(DOUBLES, out, outOffset + elem);
+            DoubleVector.fromArray(DOUBLES, grad, gradOffset + elem).mul(val).mul(val.neg().add(1.0)).intoArray(res, resOffset + elem);
+        }
+        scalar.sigmoidBackward(out, outOffset + elem, grad, gradOffset + elem, res, resOffset + elem, num - elem);
+    }
+
+    @Override
+    public void sigmoidBackward(float[] out, int outOffset, float[] grad, int gradOffset, float[] res, int resOffset, int num) {
+        int bound = FLOATS.loopBound(num);
+        int elem = 0;
+        for (; elem < bound; elem += FLOATS.length()) {
+            FloatVector val = FloatVector.fromArray(FLOATS, out, outOffset + elem);
+            FloatVector.fromArray(FLOATS, grad, gradOffset + elem).mul(val).mul(val.neg().add(1.0f)).intoArray(res, resOffset + elem);
+        }
+        scalar.sigmoidBackward(out, outOffset + elem, grad, gradOffset + elem, res, resOffset + elem, num - elem);
+    }
+
+    @Override
+    public double expSum(double[] in, int inOffset, double shift, double[] res, int resOffset, int num) {
+        int bound = DOUBLES.loopBound(num);
+        int elem = 0;
+        DoubleVector sum = DoubleVector.zero(DOUBLES);
+        for (; elem < bound; elem += DOUBLES.length()) {
+            DoubleVector exp = exp(DoubleVector.fromArray(DOUBLES, in, inOffset + elem).sub(shift));
+            exp.intoArray(res, resOffset + elem);
+            sum = sum.add(exp);
+        }
+        return sum.reduceLanes(VectorOperators.ADD) + scalar.expSum(in, inOffset + elem, shift, res, resOffset + elem, num - elem);
+    }
+
+    @Override
+    public double expSum(float[] in, int inOffset, float shift, float[] res, int resOffset, int num) {
+        int bound = FLOATS.loopBound(num);
+        int elem = 0;
+        FloatVector sum = FloatVector.zero(FLOATS);
+        for (; elem < bound; elem += FLOATS.length()) {
+            FloatVector exp = exp(FloatVector.fromArray(FLOATS, in, inOffset + elem).sub(shift));
+            exp.intoArray(res, resOffset + elem);
+            sum = sum.add(exp);
+        }
+        return sum.reduceLanes(VectorOperators.ADD) + scalar.expSum(in, inOffset + elem, shift, res, resOffset + elem, num - elem);
+    }
+
+    private static DoubleVector exp(DoubleVector in) {
+        DoubleVector x = in.max(EXP_MIN).min(EXP_MAX);
+        DoubleVector shifted = x.fma(LOG2_E, ROUNDER);
+        DoubleVector k = shifted.sub(ROUNDER);
+        DoubleVector r = k.fma(k.broadcast(-LN2_HI), x);
+        r = k.fma(k.broadcast(-LN2_LO), r);
+        DoubleVector poly = r.fma(1.0 / 39916800, 1.0 / 3628800);
+        poly = poly.fma(r, r.broadcast(1.0 / 362880));
+        poly = poly.fma(r, r.broadcast(1.0 / 40320));
+        poly = poly.fma(r, r.broadcast(1.0 / 5040));
+        poly = poly.fma(r, r.broadcast(1.0 / 720));
+        poly = poly.fma(r, r.broadcast(1.0 / 120));
+        poly = poly.fma(r, r.broadcast(1.0 / 24));
+        poly = poly.fma(r, r.broadcast(1.0 / 6));
+        poly = poly.fma(r, r.broadcast(0.5));
+        poly = poly.fma(r, r.broadcast(1.0));
+        poly = poly.fma(r, r.broadcast(1.0));
+        return poly.mul(shifted.reinterpretAsLongs().add(1023L).lanewise(VectorOperators.LSHL, 52).reinterpretAsDoubles());
+    }
+
+    private static FloatVector exp(FloatVector in) {
+        FloatVector x = in.max(EXP_MIN_FLOAT).min(EXP_MAX_FLOAT);
+        FloatVector shifted = x.fma((float) LOG2_E, ROUNDER_FLOAT);
+        FloatVector k = shifted.sub(ROUNDER_FLOAT);
+        FloatVector r = k.fma(k.broadcast(-LN2_HI_FLOAT), x);
+        r = k.fma(k.broadcast(-LN2_LO_FLOAT), r);
+        FloatVector poly = r.fma(1.0f / 5040, 1.0f / 720);
+        poly = poly.fma(r, r.broadcast(1.0f / 120));
+        poly = poly.fma(r, r.broadcast(1.0f / 24));
+        poly = poly.fma(r, r.broadcast(1.0f / 6));
+        poly = poly.fma(r, r.broadcast(0.5f));
+        poly = poly.fma(r, r.broadcast(1.0f));
+        poly = poly.fma(r, r.broadcast(1.0f));
+        return poly.mul(shifted.reinterpretAsInts().add(127).lanewise(VectorOperators.LSHL, 23).reinterpretAsFloats());
+    }
+}
@@ -0,0 +1,9 @@
+#!/bin/sh
+set -e
+cd "$(dirname "$0")/.."
+rm -rf out/simd
+mkdir -p out/simd
+javac --add-modules jdk.incubator.vector -d out/simd src/*.java simd/*.java bench/*.java
+main="${1:-Main}"
+[ $# -gt 0 ] && shift
+java --add-modules jdk.incubator.vector -cp out/simd "$main" "$@"
@@ -0,0 +1,272 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+class BatchLoader implements AutoCloseable {
+
+    private final Dataset dataset;
+    private final Scaler scaler;
+    private final int[] order;
+    private final int[][] epochOrders;
+    private final int[][] epochStartOrders;
+    private final long[] epochStartRands;
+    private final ResumableRandom randGen;
+    private final int batchSize;
+    private final int numFiles;
+    private final int batchesPerEpoch;
+    private final long startBatch;
+    private final long totalBatches;
+    private final int numLoaders;
+    private final Batch[] ring;
+    private final long[] readySeq;
+    private final AtomicLong nextSeq;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition slotFreed = lock.newCondition();
+    private final Condition batchReady = lock.newCondition();
+    private final ExecutorService executor;
+    private final long startTime;
+    private int plannedEpochs;
+    private int freedEpochs;
+    private long takenSeq;
+    private long releasedSeq;
+    private IOException failure;
+    private long consumerWaitNanos;
+    private long consumerStalls;
+    private long producerWaitNanos;
+    private long endTime;
+    private boolean closed;
+
+    BatchLoader(Dataset dataset, Scaler scaler, int[] order, int epochs, int startBatch, int batchSize, int numOutputs, ResumableRandom randGen, int numLoaders, int ringCapacity) {
+        if (numLoaders < 1 || ringCapacity < 1) {
+            throw new IllegalArgumentException(String.format("Cannot prefetch with %d loader threads and a ring of %d batches", numLoaders, ringCapacity));
+        } else if (startBatch < 0 || (long) startBatch * batchSize >= order.length) {
+            throw new IllegalArgumentException(String.format("Cannot start at batch %d of an epoch of %d samples", startBatch, order.length));
+        }
+        this.dataset = dataset;
+        this.scaler = scaler;
+        this.order = order;
+        this.epochOrders = new int[epochs][];
+        this.epochStartOrders = new int[epochs][];
+        this.epochStartRands = new long[epochs];
+        this.randGen = randGen;
+        this.batchSize = batchSize;
+        this.numFiles = order.length;
+        this.batchesPerEpoch = (numFiles + batchSize - 1) / batchSize;
+        this.startBatch = startBatch;
+        this.totalBatches = (long) batchesPerEpoch * epochs;
+        this.nextSeq = new AtomicLong(startBatch);
+        this.takenSeq = startBatch;
+        this.releasedSeq = startBatch;
+        this.numLoaders = numLoaders;
+        this.ring = new Batch[(int) Math.max(1, Math.min(ringCapacity, totalBatches - startBatch))];
+        this.readySeq = new long[ring.length];
+        for (int slot = 0; slot < ring.length; ++slot) {
+            ring[slot] = new Batch(new Matrix(batchSize, dataset.getNumFeatures()), new Matrix(batchSize, numOutputs));
+            readySeq[slot] = -1;
+        }
+        this.executor = Executors.newFixedThreadPool(numLoaders, runnable -> {
+            Thread thread = new Thread(runnable, "batch-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.startTime = System.nanoTime();
+        for (int loader = 0; loader < numLoaders; ++loader) {
+            executor.execute(this::produce);
+        }
+    }
+
+    boolean hasNext() {
+        return takenSeq < totalBatches;
+    }
+
+    Batch take() throws IOException {
+        int slot = (int) (takenSeq % ring.length);
+        lock.lock();
+        try {
+            if (readySeq[slot] != takenSeq) {
+                long waitStart = System.nanoTime();
+                ++consumerStalls;
+                while (readySeq[slot] != takenSeq) {
+                    if (failure != null) {
+                        throw failure;
+                    }
+                    batchReady.await();
+                }
+                consumerWaitNanos += System.nanoTime() - waitStart;
+            }
+            ++takenSeq;
+            return ring[slot];
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a training batch!");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void release() {
+        lock.lock();
+        try {
+            ++releasedSeq;
+            slotFreed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void produce() {
+        try {
+            for (long seq = nextSeq.getAndIncrement(); seq < totalBatches; seq = nextSeq.getAndIncrement()) {
+                int slot = (int) (seq % ring.length);
+                int epoch = (int) (seq / batchesPerEpoch);
+                int[] epochOrder;
+                lock.lock();
+                try {
+                    if (seq >= releasedSeq + ring.length && !closed) {
+                        long waitStart = System.nanoTime();
+                        while (seq >= releasedSeq + ring.length && !closed) {
+                            slotFreed.await();
+                        }
+                        producerWaitNanos += System.nanoTime() - waitStart;
+                    }
+                    if (closed) {
+                        return;
+                    }
+                    epochOrder = getEpochOrder(epoch);
+                } finally {
+                    lock.unlock();
+                }
+                fill(ring[slot], epochOrder, epoch, (int) (seq % batchesPerEpoch));
+                lock.lock();
+                try {
+                    readySeq[slot] = seq;
+                    batchReady.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            fail(e);
+        } catch (RuntimeException e) {
+            fail(new IOException("Could not load a training batch!", e));
+        }
+    }
+
+    private int[] getEpochOrder(int epoch) {
+        while (plannedEpochs <= epoch) {
+            epochStartOrders[plannedEpochs] = order.clone();
+            epochStartRands[plannedEpochs] = randGen.getState();
+            Network.shuffle(order, randGen);
+            epochOrders[plannedEpochs++] = order.clone();
+        }
+        for (; freedEpochs < releasedSeq / batchesPerEpoch; ++freedEpochs) {
+            epochOrders[freedEpochs] = null;
+            epochStartOrders[freedEpochs] = null;
+        }
+        return epochOrders[epoch];
+    }
+
+    TrainingState getTrainingState(int epoch, int batchInEpoch, int epochOffset, int endEpoch) {
+        lock.lock();
+        try {
+            if (epoch < plannedEpochs) {
+                return new TrainingState(epochOffset + epoch, endEpoch, batchInEpoch, batchSize, epochStartOrders[epoch].clone(), epochStartRands[epoch]);
+            }
+            return new TrainingState(epochOffset + epoch, endEpoch, batchInEpoch, batchSize, order.clone(), randGen.getState());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void fill(Batch batch, int[] epochOrder, int epoch, int batchInEpoch) throws IOException {
+        int last = numFiles - 1 - batchInEpoch * batchSize;
+        int size = Math.min(batchSize, last + 1);
+        double[] in = batch.in.getData();
+        double[] actual = batch.actual.getData();
+        int numOutputs = batch.actual.getCols();
+        for (int sample = 0; sample < size; ++sample) {
+            int ans = dataset.readScaledSample(epochOrder[last - sample], in, batch.in.indexOf(sample, 0), scaler);
+            Network.oneHotEncode(ans, actual, batch.actual.indexOf(sample, 0), numOutputs);
+        }
+        batch.size = size;
+        batch.epoch = epoch;
+        batch.trained = batchInEpoch * batchSize + size;
+    }
+
+    private void fail(IOException e) {
+        lock.lock();
+        try {
+            if (failure == null) {
+                failure = e;
+            }
+            batchReady.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    double getConsumerWaitSecs() {
+        return consumerWaitNanos / 1e9;
+    }
+
+    long getConsumerStalls() {
+        return consumerStalls;
+    }
+
+    double getProducerWaitSecs() {
+        return producerWaitNanos / 1e9;
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            closed = true;
+            if (endTime == 0) {
+                endTime = System.nanoTime();
+            }
+            slotFreed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while stopping the batch loaders!");
+        }
+    }
+
+    @Override
+    public String toString() {
+        lock.lock();
+        try {
+            double elapsedSecs = ((endTime == 0 ? System.nanoTime() : endTime) - startTime) / 1e9;
+            return String.format("Data loader: %d threads, %d-batch ring, %d batches, consumer waited %.3f s (%.1f%%) in %d stalls, loaders waited %.3f s on a full ring", numLoaders, ring.length, takenSeq - startBatch, getConsumerWaitSecs(), elapsedSecs > 0 ? getConsumerWaitSecs() * 100 / elapsedSecs : 0.0, consumerStalls, getProducerWaitSecs() / numLoaders);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
+
+class Batch {
+
+    final Matrix in;
+    final Matrix actual;
+    int size;
+    int epoch;
+    int trained;
+
+    Batch(Matrix in, Matrix actual) {
+        this.in = in;
+        this.actual = actual;
+    }
+}
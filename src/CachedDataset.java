@@ -0,0 +1,292 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+class CachedDataset implements Dataset {
+
+    static final int SAMPLE_OVERHEAD = 6;
+    static final int SLOT_OVERHEAD = 5;
+    private final Dataset source;
+    private final Scaler scaler;
+    private final double[] multipliers;
+    private final double[] offsets;
+    private final long budgetBytes;
+    private final long lastModified;
+    private final int numSamples;
+    private final int numFeatures;
+    private final long slotBytes;
+    private final int numSlots;
+    private final byte[] pixelSlab;
+    private final float[] scaledSlab;
+    private final byte[] labels;
+    private final int[] slotOf;
+    private final int[] slotSamples;
+    private final boolean[] referenced;
+    private final boolean[] spilledSamples;
+    private final double[] scratch;
+    private final ByteBuffer spillIn;
+    private final ByteBuffer spillOut;
+    private final StampedLock slabLock = new StampedLock();
+    private final LongAdder hits = new LongAdder();
+    private int numResident;
+    private int clockHand;
+    private long misses;
+    private long evictions;
+    private FileChannel spillChannel;
+    private Path spillPath;
+
+    CachedDataset(Dataset source, Scaler scaler, long budgetBytes, long lastModified) throws IOException {
+        this.source = source;
+        this.scaler = scaler;
+        this.budgetBytes = budgetBytes;
+        this.lastModified = lastModified;
+        this.numSamples = source.size();
+        this.numFeatures = source.getNumFeatures();
+        this.multipliers = scaler.getMultipliers(numFeatures);
+        this.offsets = scaler.getOffsets(numFeatures);
+        this.scratch = new double[numFeatures];
+        if (numSamples > 0) {
+            source.readSample(0, scratch, 0);
+        }
+        boolean uint8 = isUint8(scratch);
+        this.slotBytes = (uint8 ? 1L : 4L) * numFeatures + SLOT_OVERHEAD;
+        long maxSlots = Math.min(numSamples, Integer.MAX_VALUE / Math.max(1, numFeatures));
+        this.numSlots = (int) Math.max(1, Math.min(maxSlots, (budgetBytes - (long) numSamples * SAMPLE_OVERHEAD) / slotBytes));
+        this.pixelSlab = uint8 ? new byte[numSlots * numFeatures] : null;
+        this.scaledSlab = uint8 ? null : new float[numSlots * numFeatures];
+        this.labels = new byte[numSamples];
+        this.slotOf = new int[numSamples];
+        this.slotSamples = new int[numSlots];
+        this.referenced = new boolean[numSlots];
+        this.spilledSamples = new boolean[numSamples];
+        this.spillIn = ByteBuffer.allocate(numFeatures + 1);
+        this.spillOut = ByteBuffer.allocate(numFeatures + 1);
+        Arrays.fill(slotOf, -1);
+        Arrays.fill(slotSamples, -1);
+    }
+
+    @Override
+    public int size() {
+        return numSamples;
+    }
+
+    @Override
+    public int getNumFeatures() {
+        return numFeatures;
+    }
+
+    long getLastModified() {
+        return lastModified;
+    }
+
+    @Override
+    public int readSample(int index, double[] in, int offset) throws IOException {
+        if (pixelSlab != null) {
+            long stamp = slabLock.tryOptimisticRead();
+            int slot = slotOf[index];
+            if (slot >= 0) {
+                copyPixels(slot, in, offset);
+                int label = labels[index] & 0xFF;
+                if (slabLock.validate(stamp)) {
+                    recordHit(slot);
+                    return label;
+                }
+            }
+        }
+        return readMiss(index, in, offset, false);
+    }
+
+    @Override
+    public int readScaledSample(int index, double[] in, int offset, Scaler scaler) throws IOException {
+        if (scaler != this.scaler) {
+            return Dataset.super.readScaledSample(index, in, offset, scaler);
+        }
+        long stamp = slabLock.tryOptimisticRead();
+        int slot = slotOf[index];
+        if (slot >= 0) {
+            copyScaled(slot, in, offset);
+            int label = labels[index] & 0xFF;
+            if (slabLock.validate(stamp)) {
+                recordHit(slot);
+                return label;
+            }
+        }
+        return readMiss(index, in, offset, true);
+    }
+
+    private void recordHit(int slot) {
+        hits.increment();
+        referenced[slot] = true;
+    }
+
+    private void copyPixels(int slot, double[] in, int offset) {
+        int base = slot * numFeatures;
+        for (int elem = 0; elem < numFeatures; ++elem) {
+            in[offset + elem] = pixelSlab[base + elem] & 0xFF;
+        }
+    }
+
+    private void copyScaled(int slot, double[] in, int offset) {
+        int base = slot * numFeatures;
+        if (pixelSlab != null) {
+            for (int elem = 0; elem < numFeatures; ++elem) {
+                in[offset + elem] = (pixelSlab[base + elem] & 0xFF) * multipliers[elem] + offsets[elem];
+            }
+        } else {
+            for (int elem = 0; elem < numFeatures; ++elem) {
+                in[offset + elem] = scaledSlab[base + elem];
+            }
+        }
+    }
+
+    private synchronized int readMiss(int index, double[] in, int offset, boolean scaled) throws IOException {
+        if (!scaled && pixelSlab == null) {
+            return source.readSample(index, in, offset);
+        }
+        int slot = slotOf[index];
+        if (slot >= 0) {
+            recordHit(slot);
+        } else {
+            ++misses;
+            slot = load(index);
+            if (slot < 0) {
+                for (int elem = 0; elem < numFeatures; ++elem) {
+                    in[offset + elem] = scaled ? scratch[elem] * multipliers[elem] + offsets[elem] : scratch[elem];
+                }
+                return labels[index] & 0xFF;
+            }
+        }
+        if (scaled) {
+            copyScaled(slot, in, offset);
+        } else {
+            copyPixels(slot, in, offset);
+        }
+        return labels[index] & 0xFF;
+    }
+
+    private int load(int index) throws IOException {
+        boolean spilled = spilledSamples[index];
+        int label;
+        if (spilled) {
+            label = readSpilledSample(index);
+        } else {
+            label = source.readSample(index, scratch, 0);
+            if (label < 0 || label > 255) {
+                throw new IOException(String.format("Cannot cache label %d of sample #%d", label, index));
+            }
+            if (pixelSlab != null && !isUint8(scratch)) {
+                labels[index] = (byte) label;
+                return -1;
+            }
+        }
+        int slot = numResident < numSlots ? numResident++ : evict();
+        long stamp = slabLock.writeLock();
+        try {
+            if (slotSamples[slot] >= 0) {
+                slotOf[slotSamples[slot]] = -1;
+            }
+            int base = slot * numFeatures;
+            if (spilled) {
+                spillIn.get(pixelSlab, base, numFeatures);
+            } else if (pixelSlab != null) {
+                for (int elem = 0; elem < numFeatures; ++elem) {
+                    pixelSlab[base + elem] = (byte) scratch[elem];
+                }
+            } else {
+                for (int elem = 0; elem < numFeatures; ++elem) {
+                    scaledSlab[base + elem] = (float) (scratch[elem] * multipliers[elem] + offsets[elem]);
+                }
+            }
+            labels[index] = (byte) label;
+            slotSamples[slot] = index;
+            slotOf[index] = slot;
+            referenced[slot] = true;
+        } finally {
+            slabLock.unlockWrite(stamp);
+        }
+        return slot;
+    }
+
+    private int evict() throws IOException {
+        for (int sweep = 0; sweep < numSlots && referenced[clockHand]; ++sweep) {
+            referenced[clockHand] = false;
+            clockHand = (clockHand + 1) % numSlots;
+        }
+        int slot = clockHand;
+        clockHand = (clockHand + 1) % numSlots;
+        int sample = slotSamples[slot];
+        ++evictions;
+        if (pixelSlab != null && !spilledSamples[sample]) {
+            if (spillChannel == null) {
+                spillPath = Files.createTempFile("dataset-cache", ".spill");
+                spillPath.toFile().deleteOnExit();
+                spillChannel = FileChannel.open(spillPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            spillOut.clear();
+            spillOut.put(labels[sample]).put(pixelSlab, slot * numFeatures, numFeatures).flip();
+            long position = getSpillOffset(sample);
+            while (spillOut.hasRemaining()) {
+                position += spillChannel.write(spillOut, position);
+            }
+            spilledSamples[sample] = true;
+        }
+        return slot;
+    }
+
+    private int readSpilledSample(int index) throws IOException {
+        spillIn.clear();
+        long position = getSpillOffset(index);
+        while (spillIn.hasRemaining()) {
+            int numRead = spillChannel.read(spillIn, position);
+            if (numRead < 0) {
+                throw new EOFException(String.format("Dataset cache spill file %s is truncated!", spillPath));
+            }
+            position += numRead;
+        }
+        spillIn.flip();
+        return spillIn.get() & 0xFF;
+    }
+
+    private long getSpillOffset(int index) {
+        return (long) index * (numFeatures + 1);
+    }
+
+    private static boolean isUint8(double[] in) {
+        for (double val : in) {
+            if (val < 0 || val > 255 || val != (int) val) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    synchronized void close() throws IOException {
+        long stamp = slabLock.writeLock();
+        try {
+            Arrays.fill(slotOf, -1);
+            Arrays.fill(slotSamples, -1);
+            Arrays.fill(referenced, false);
+            numResident = 0;
+            clockHand = 0;
+        } finally {
+            slabLock.unlockWrite(stamp);
+        }
+        Arrays.fill(spilledSamples, false);
+        if (spillChannel != null) {
+            spillChannel.close();
+            Files.deleteIfExists(spillPath);
+            spillChannel = null;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("Dataset cache: %d/%d samples resident (%.1f/%.1f MB), %d hits, %d misses, %d evictions", numResident, numSamples, (numResident * slotBytes + (long) numSamples * SAMPLE_OVERHEAD) / 1048576.0, budgetBytes / 1048576.0, hits.sum(), misses, evictions);
+    }
+}
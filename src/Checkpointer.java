@@ -0,0 +1,176 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+class TrainingState implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    final int epoch;
+    final int endEpoch;
+    final int batchInEpoch;
+    final int batchSize;
+    final int[] order;
+    final long randState;
+
+    TrainingState(int epoch, int endEpoch, int batchInEpoch, int batchSize, int[] order, long randState) {
+        this.epoch = epoch;
+        this.endEpoch = endEpoch;
+        this.batchInEpoch = batchInEpoch;
+        this.batchSize = batchSize;
+        this.order = order;
+        this.randState = randState;
+    }
+
+    ResumableRandom restoreRandom() {
+        return ResumableRandom.fromState(randState);
+    }
+
+    int getRemainingEpochs() {
+        return endEpoch - epoch;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("epoch %d of %d, batch %d (batch size %d, %d samples)", epoch + 1, endEpoch, batchInEpoch, batchSize, order.length);
+    }
+}
+
+class ResumableRandom extends Random {
+
+    private static final long serialVersionUID = 1L;
+    static final long MULTIPLIER = 0x5DEECE66DL;
+    static final long ADDEND = 0xBL;
+    static final long MASK = (1L << 48) - 1;
+    private long state;
+
+    ResumableRandom(long seed) {
+        super(seed);
+    }
+
+    static ResumableRandom fromState(long state) {
+        if (state < 0 || state > MASK) {
+            throw new IllegalArgumentException(String.format("Invalid random generator state %d", state));
+        }
+        return new ResumableRandom(state ^ MULTIPLIER);
+    }
+
+    long getState() {
+        return state;
+    }
+
+    @Override
+    public synchronized void setSeed(long seed) {
+        state = (seed ^ MULTIPLIER) & MASK;
+        super.setSeed(seed);
+    }
+
+    @Override
+    protected int next(int bits) {
+        state = (state * MULTIPLIER + ADDEND) & MASK;
+        return (int) (state >>> (48 - bits));
+    }
+}
+
+class Checkpointer implements AutoCloseable {
+
+    static final String EXTENSION = ".nnm";
+    private final File directory;
+    private final String prefix;
+    private final int everyBatches;
+    private final long everyNanos;
+    private final int maxKept;
+    private final ExecutorService writer;
+    private Future<?> pending;
+    private long lastTime;
+    private long lastBatches;
+    private int numWritten;
+    private int numSkipped;
+    private int numFailed;
+    private double snapshotSecs;
+
+    Checkpointer(File baseFile, int everyBatches, long everySecs, int maxKept) {
+        if (everyBatches < 0 || everySecs < 0 || everyBatches + everySecs == 0) {
+            throw new IllegalArgumentException(String.format("Cannot checkpoint every %d batches / %d seconds", everyBatches, everySecs));
+        } else if (maxKept < 1) {
+            throw new IllegalArgumentException(String.format("Cannot keep < 1 checkpoint (%d)", maxKept));
+        }
+        File absolute = baseFile.getAbsoluteFile();
+        this.directory = absolute.getParentFile();
+        this.prefix = absolute.getName().endsWith(EXTENSION) ? absolute.getName().substring(0, absolute.getName().length() - EXTENSION.length()) : absolute.getName();
+        this.everyBatches = everyBatches;
+        this.everyNanos = TimeUnit.SECONDS.toNanos(everySecs);
+        this.maxKept = maxKept;
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "checkpoint-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.lastTime = System.nanoTime();
+    }
+
+    synchronized boolean isDue(long batchesTrained) {
+        return (everyBatches > 0 && batchesTrained - lastBatches >= everyBatches) || (everyNanos > 0 && System.nanoTime() - lastTime >= everyNanos);
+    }
+
+    synchronized void checkpoint(Network network, TrainingState state, long batchesTrained) {
+        if (pending != null && !pending.isDone()) {
+            ++numSkipped;
+            return;
+        }
+        lastTime = System.nanoTime();
+        lastBatches = batchesTrained;
+        Network snapshot = network.snapshot(state);
+        snapshotSecs += (System.nanoTime() - lastTime) / 1e9;
+        File file = new File(directory, String.format("%s-e%04d-b%07d%s", prefix, state.epoch + 1, state.batchInEpoch, EXTENSION));
+        pending = writer.submit(() -> write(snapshot, file));
+    }
+
+    private void write(Network snapshot, File file) {
+        try {
+            ModelFile.write(snapshot, file);
+            synchronized (this) {
+                ++numWritten;
+            }
+            rotate();
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                ++numFailed;
+            }
+            System.out.printf("\nCould not write checkpoint %s! (%s)\n", file, e.getMessage());
+        }
+    }
+
+    private void rotate() {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(prefix + "-e") && name.endsWith(EXTENSION));
+        if (files != null && files.length > maxKept) {
+            Arrays.sort(files);
+            for (int file = 0; file < files.length - maxKept; ++file) {
+                if (!files[file].delete()) {
+                    System.out.printf("\nCould not delete old checkpoint %s!\n", files[file]);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing the last checkpoint!");
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("Checkpoints: %d written to %s%s%s-e*%s (keeping %d), %d deferred while a write was in flight, %d failed, %.3f s spent snapshotting", numWritten, directory, File.separator, prefix, EXTENSION, maxKept, numSkipped, numFailed, snapshotSecs);
+    }
+}
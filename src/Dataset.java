@@ -0,0 +1,127 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.Arrays;
+
+interface Dataset {
+
+    int size();
+
+    int getNumFeatures();
+
+    int readSample(int index, double[] in, int offset) throws IOException;
+
+    default int readScaledSample(int index, double[] in, int offset, Scaler scaler) throws IOException {
+        int ans = readSample(index, in, offset);
+        scaler.scaleSample(in, offset, getNumFeatures());
+        return ans;
+    }
+
+    static Dataset open(File file) throws IOException {
+        if (file.isDirectory()) {
+            File[] files = file.listFiles();
+            Arrays.sort(files);
+            return new TextDataset(files);
+        } else if (PackedDataset.isPacked(file)) {
+            return new PackedDataset(file);
+        } else if (IdxDataset.isIdx(file)) {
+            return new IdxDataset(file);
+        } else {
+            return new TextDataset(file);
+        }
+    }
+
+    static boolean isSingleSample(File file) throws IOException {
+        return file.isFile() && !PackedDataset.isPacked(file) && !IdxDataset.isIdx(file);
+    }
+}
+
+class TextDataset implements Dataset {
+
+    static final int NUM_ROWS = 28;
+    static final int NUM_COLS = 28;
+    private final File[] files;
+
+    TextDataset(File ... files) {
+        this.files = files;
+    }
+
+    @Override
+    public int size() {
+        return files.length;
+    }
+
+    @Override
+    public int getNumFeatures() {
+        return NUM_ROWS * NUM_COLS;
+    }
+
+    @Override
+    public int readSample(int index, double[] in, int offset) throws IOException {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(files[index].toPath());
+        } catch (NoSuchFileException e) {
+            throw new FileNotFoundException(String.format("%s", e.toString()));
+        }
+        int pos = 0;
+        for (int row = 0; row < NUM_ROWS; ++row) {
+            int col = 0;
+            while (pos < bytes.length && bytes[pos] != '\n') {
+                if (isSeparator(bytes[pos])) {
+                    ++pos;
+                    continue;
+                }
+                int end = findTokenEnd(bytes, pos);
+                if (col < NUM_COLS) {
+                    in[offset + NUM_COLS * row + col] = parseNumber(bytes, pos, end);
+                }
+                ++col;
+                pos = end;
+            }
+            if (col < NUM_COLS) {
+                throw new IOException(String.format("Row %d of %s has %d values instead of %d", row + 1, files[index], col, NUM_COLS));
+            }
+            ++pos;
+        }
+        while (pos < bytes.length && (isSeparator(bytes[pos]) || bytes[pos] == '\n')) {
+            ++pos;
+        }
+        if (pos == bytes.length) {
+            throw new EOFException(String.format("%s has no label after its %d rows", files[index], NUM_ROWS));
+        }
+        return (int) parseNumber(bytes, pos, findTokenEnd(bytes, pos));
+    }
+
+    private static boolean isSeparator(byte ch) {
+        return ch == '\t' || ch == ' ' || ch == '\r';
+    }
+
+    private static int findTokenEnd(byte[] bytes, int pos) {
+        while (pos < bytes.length && bytes[pos] != '\n' && !isSeparator(bytes[pos])) {
+            ++pos;
+        }
+        return pos;
+    }
+
+    private static double parseNumber(byte[] bytes, int start, int end) {
+        int pos = start;
+        boolean negative = pos < end && bytes[pos] == '-';
+        if (negative) {
+            ++pos;
+        }
+        long val = 0;
+        for (; pos < end && pos - start < 18; ++pos) {
+            int digit = bytes[pos] - '0';
+            if (digit < 0 || digit > 9) {
+                break;
+            }
+            val = val * 10 + digit;
+        }
+        if (pos == end && end > start + (negative ? 1 : 0)) {
+            return negative ? -val : val;
+        }
+        return Double.parseDouble(new String(bytes, start, end - start, StandardCharsets.US_ASCII));
+    }
+}
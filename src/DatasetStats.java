@@ -0,0 +1,182 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+class DatasetStats {
+
+    static final int PROGRESS_INTERVAL = 1024;
+    private final int numFeatures;
+    private long count;
+    private double mean;
+    private double m2;
+    private long numSamples;
+    private final double[] featureMeans;
+    private final double[] featureM2s;
+
+    DatasetStats(int numFeatures, boolean perFeature) {
+        this.numFeatures = numFeatures;
+        this.featureMeans = perFeature ? new double[numFeatures] : null;
+        this.featureM2s = perFeature ? new double[numFeatures] : null;
+    }
+
+    void addSample(double[] in) {
+        double sampleMean = 0.0;
+        for (int elem = 0; elem < numFeatures; ++elem) {
+            sampleMean += in[elem];
+        }
+        sampleMean /= numFeatures;
+        double sampleM2 = 0.0;
+        for (int elem = 0; elem < numFeatures; ++elem) {
+            double delta = in[elem] - sampleMean;
+            sampleM2 += delta * delta;
+        }
+        long total = count + numFeatures;
+        double delta = sampleMean - mean;
+        mean += delta * numFeatures / total;
+        m2 += sampleM2 + delta * delta * count * numFeatures / total;
+        count = total;
+
+        ++numSamples;
+        if (featureMeans != null) {
+            for (int elem = 0; elem < numFeatures; ++elem) {
+                double featureDelta = in[elem] - featureMeans[elem];
+                featureMeans[elem] += featureDelta / numSamples;
+                featureM2s[elem] += featureDelta * (in[elem] - featureMeans[elem]);
+            }
+        }
+    }
+
+    void merge(DatasetStats other) {
+        if (other.numSamples == 0) {
+            return;
+        }
+        long total = count + other.count;
+        double delta = other.mean - mean;
+        mean += delta * other.count / total;
+        m2 += other.m2 + delta * delta * count * other.count / total;
+        count = total;
+
+        long totalSamples = numSamples + other.numSamples;
+        if (featureMeans != null) {
+            for (int elem = 0; elem < numFeatures; ++elem) {
+                double featureDelta = other.featureMeans[elem] - featureMeans[elem];
+                featureMeans[elem] += featureDelta * other.numSamples / totalSamples;
+                featureM2s[elem] += other.featureM2s[elem] + featureDelta * featureDelta * numSamples * other.numSamples / totalSamples;
+            }
+        }
+        numSamples = totalSamples;
+    }
+
+    long getNumSamples() {
+        return numSamples;
+    }
+
+    double getMean() {
+        return mean;
+    }
+
+    double getStd() {
+        return count == 0 ? 0.0 : Math.sqrt(m2 / count);
+    }
+
+    boolean hasFeatureStats() {
+        return featureMeans != null;
+    }
+
+    double[] getFeatureMeans() {
+        return featureMeans.clone();
+    }
+
+    double[] getFeatureStds() {
+        double[] stds = new double[numFeatures];
+        for (int elem = 0; elem < numFeatures; ++elem) {
+            stds[elem] = numSamples == 0 ? 0.0 : Math.sqrt(featureM2s[elem] / numSamples);
+        }
+        return stds;
+    }
+
+    static DatasetStats compute(Dataset dataset, boolean perFeature, int numThreads) throws IOException {
+        int numFiles = dataset.size();
+        AtomicLong progress = new AtomicLong();
+        int leafSize = Math.max(PROGRESS_INTERVAL, numFiles / (numThreads * 8));
+        ForkJoinPool pool = new ForkJoinPool(numThreads);
+
+        try {
+            ForkJoinTask<DatasetStats> task = pool.submit(new StatsTask(dataset, perFeature, 0, numFiles, leafSize, progress));
+            while (true) {
+                try {
+                    DatasetStats stats = task.get(1, TimeUnit.SECONDS);
+                    System.out.printf("\rCompleted calculation [MEAN, STD] (%d files)\n", numFiles);
+                    return stats;
+                } catch (TimeoutException e) {
+                    System.out.printf("\rCalculating parameters [MEAN, STD] (%d/%d) files", progress.get(), numFiles);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while calculating dataset statistics!");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
+
+class StatsTask extends RecursiveTask<DatasetStats> {
+
+    private static final long serialVersionUID = 1L;
+    private final Dataset dataset;
+    private final boolean perFeature;
+    private final int fromFile;
+    private final int toFile;
+    private final int leafSize;
+    private final AtomicLong progress;
+
+    StatsTask(Dataset dataset, boolean perFeature, int fromFile, int toFile, int leafSize, AtomicLong progress) {
+        this.dataset = dataset;
+        this.perFeature = perFeature;
+        this.fromFile = fromFile;
+        this.toFile = toFile;
+        this.leafSize = leafSize;
+        this.progress = progress;
+    }
+
+    @Override
+    protected DatasetStats compute() {
+        if (toFile - fromFile <= leafSize) {
+            DatasetStats stats = new DatasetStats(dataset.getNumFeatures(), perFeature);
+            double[] in = new double[dataset.getNumFeatures()];
+            try {
+                for (int file = fromFile; file < toFile; ++file) {
+                    dataset.readSample(file, in, 0);
+                    stats.addSample(in);
+                    if ((file - fromFile + 1) % DatasetStats.PROGRESS_INTERVAL == 0) {
+                        progress.addAndGet(DatasetStats.PROGRESS_INTERVAL);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            progress.addAndGet((toFile - fromFile) % DatasetStats.PROGRESS_INTERVAL);
+            return stats;
+        }
+        int midFile = (fromFile + toFile) >>> 1;
+        StatsTask left = new StatsTask(dataset, perFeature, fromFile, midFile, leafSize, progress);
+        StatsTask right = new StatsTask(dataset, perFeature, midFile, toFile, leafSize, progress);
+        right.fork();
+        DatasetStats stats = left.compute();
+        stats.merge(right.join());
+        return stats;
+    }
+}
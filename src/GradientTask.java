@@ -0,0 +1,52 @@
+import java.util.concurrent.RecursiveTask;
+
+class GradientTask extends RecursiveTask<Double> {
+
+    private static final long serialVersionUID = 1L;
+    private final Network network;
+    private final Matrix in;
+    private final Matrix actual;
+    private final LayerWorkspace[][] shardWs;
+    private final int fromShard;
+    private final int toShard;
+    private final int numShards;
+    private final double scale;
+
+    GradientTask(Network network, Matrix in, Matrix actual, LayerWorkspace[][] shardWs, int fromShard, int toShard, double scale) {
+        this(network, in, actual, shardWs, fromShard, toShard, toShard - fromShard, scale);
+    }
+
+    private GradientTask(Network network, Matrix in, Matrix actual, LayerWorkspace[][] shardWs, int fromShard, int toShard, int numShards, double scale) {
+        this.network = network;
+        this.in = in;
+        this.actual = actual;
+        this.shardWs = shardWs;
+        this.fromShard = fromShard;
+        this.toShard = toShard;
+        this.numShards = numShards;
+        this.scale = scale;
+    }
+
+    @Override
+    protected Double compute() {
+        if (toShard - fromShard == 1) {
+            int batchSize = in.getRows();
+            int start = (int) ((long) batchSize * fromShard / numShards);
+            int end = (int) ((long) batchSize * toShard / numShards);
+            return network.computeGradients(in.rowRange(start, end - start), actual.rowRange(start, end - start), shardWs[fromShard], scale);
+        }
+        int midShard = (fromShard + toShard) >>> 1;
+        GradientTask left = new GradientTask(network, in, actual, shardWs, fromShard, midShard, numShards, scale);
+        GradientTask right = new GradientTask(network, in, actual, shardWs, midShard, toShard, numShards, scale);
+        right.fork();
+        double loss = left.compute();
+        loss += right.join();
+        LayerWorkspace[] leftWs = shardWs[fromShard];
+        LayerWorkspace[] rightWs = shardWs[midShard];
+        for (int layer = 0; layer < leftWs.length; ++layer) {
+            Matrix.axpy(1.0, rightWs[layer].dEdW, leftWs[layer].dEdW);
+            Matrix.axpy(1.0, rightWs[layer].dEdB, leftWs[layer].dEdB);
+        }
+        return loss;
+    }
+}
@@ -0,0 +1,152 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+
+class IdxDataset implements Dataset {
+
+    static final int IMAGES_MAGIC = 0x00000803;
+    static final int LABELS_MAGIC = 0x00000801;
+    private static final int GZIP_MAGIC = 0x1F8B;
+    private final int numSamples;
+    private final int numRows;
+    private final int numCols;
+    private final ByteBuffer pixels;
+    private final byte[] labels;
+
+    IdxDataset(File imagesFile) throws IOException {
+        this(imagesFile, labelsFileOf(imagesFile));
+    }
+
+    IdxDataset(File imagesFile, File labelsFile) throws IOException {
+        int[] imageDims;
+        if (isGzipped(imagesFile)) {
+            try (ReadableByteChannel channel = openGzipped(imagesFile)) {
+                imageDims = readHeader(channel, IMAGES_MAGIC, imagesFile);
+                pixels = readFully(channel, (long) imageDims[0] * imageDims[1] * imageDims[2], imagesFile);
+            }
+        } else {
+            try (FileChannel channel = FileChannel.open(imagesFile.toPath(), StandardOpenOption.READ)) {
+                imageDims = readHeader(channel, IMAGES_MAGIC, imagesFile);
+                long dataSize = (long) imageDims[0] * imageDims[1] * imageDims[2];
+                if (channel.position() + dataSize > channel.size() || dataSize > Integer.MAX_VALUE) {
+                    throw new IOException(String.format("IDX file %s is truncated/too large! (%d bytes of pixels expected)", imagesFile, dataSize));
+                }
+                pixels = channel.map(FileChannel.MapMode.READ_ONLY, channel.position(), dataSize);
+            }
+        }
+        try (ReadableByteChannel channel = isGzipped(labelsFile) ? openGzipped(labelsFile) : FileChannel.open(labelsFile.toPath(), StandardOpenOption.READ)) {
+            int[] labelDims = readHeader(channel, LABELS_MAGIC, labelsFile);
+            if (labelDims[0] != imageDims[0]) {
+                throw new IOException(String.format("IDX images (%d) and labels (%d) have different sample counts!", imageDims[0], labelDims[0]));
+            }
+            labels = readFully(channel, labelDims[0], labelsFile).array();
+        }
+        numSamples = imageDims[0];
+        numRows = imageDims[1];
+        numCols = imageDims[2];
+    }
+
+    @Override
+    public int size() {
+        return numSamples;
+    }
+
+    @Override
+    public int getNumFeatures() {
+        return numRows * numCols;
+    }
+
+    int getNumRows() {
+        return numRows;
+    }
+
+    int getNumCols() {
+        return numCols;
+    }
+
+    @Override
+    public int readSample(int index, double[] in, int offset) {
+        int numFeatures = numRows * numCols;
+        int base = index * numFeatures;
+        for (int elem = 0; elem < numFeatures; ++elem) {
+            in[offset + elem] = pixels.get(base + elem) & 0xFF;
+        }
+        return labels[index] & 0xFF;
+    }
+
+    @Override
+    public int readScaledSample(int index, double[] in, int offset, Scaler scaler) {
+        int numFeatures = numRows * numCols;
+        int base = index * numFeatures;
+        double[] multipliers = scaler.getMultipliers(numFeatures);
+        double[] offsets = scaler.getOffsets(numFeatures);
+        for (int elem = 0; elem < numFeatures; ++elem) {
+            in[offset + elem] = (pixels.get(base + elem) & 0xFF) * multipliers[elem] + offsets[elem];
+        }
+        return labels[index] & 0xFF;
+    }
+
+    static boolean isIdx(File file) throws IOException {
+        if (!file.isFile() || file.length() < 4) {
+            return false;
+        }
+        try (DataInputStream dis = new DataInputStream(isGzipped(file) ? new GZIPInputStream(new FileInputStream(file)) : new FileInputStream(file))) {
+            return dis.readInt() == IMAGES_MAGIC;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    static File labelsFileOf(File imagesFile) throws FileNotFoundException {
+        String labelsName = imagesFile.getName().replace("images", "labels").replace("idx3", "idx1");
+        File labelsFile = new File(imagesFile.getParentFile(), labelsName);
+        if (labelsName.equals(imagesFile.getName()) || !labelsFile.isFile()) {
+            throw new FileNotFoundException(String.format("Could not find the IDX labels file (%s) for %s", labelsName, imagesFile));
+        }
+        return labelsFile;
+    }
+
+    private static boolean isGzipped(File file) throws IOException {
+        try (DataInputStream dis = new DataInputStream(new FileInputStream(file))) {
+            return file.length() >= 2 && dis.readUnsignedShort() == GZIP_MAGIC;
+        }
+    }
+
+    private static ReadableByteChannel openGzipped(File file) throws IOException {
+        return Channels.newChannel(new GZIPInputStream(new FileInputStream(file), 1 << 16));
+    }
+
+    private static int[] readHeader(ReadableByteChannel channel, int magic, File file) throws IOException {
+        ByteBuffer header = readFully(channel, 4, file);
+        int fileMagic = header.getInt();
+        if (fileMagic != magic) {
+            throw new IOException(String.format("%s is not an IDX file of the expected type! (magic 0x%08X, expected 0x%08X)", file, fileMagic, magic));
+        }
+        int numDims = magic & 0xFF;
+        ByteBuffer dimsBuffer = readFully(channel, 4L * numDims, file);
+        int[] dims = new int[numDims];
+        for (int dim = 0; dim < numDims; ++dim) {
+            dims[dim] = dimsBuffer.getInt();
+        }
+        return dims;
+    }
+
+    private static ByteBuffer readFully(ReadableByteChannel channel, long size, File file) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException(String.format("IDX file %s is too large! (%d bytes)", file, size));
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ByteOrder.BIG_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException(String.format("IDX file %s is truncated!", file));
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
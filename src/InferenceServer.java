@@ -0,0 +1,272 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+class InferenceServer implements AutoCloseable {
+
+    static final long REQUEST_TIMEOUT_MILLIS = 10_000;
+    static final int MAX_QUEUED = 4096;
+    private final HttpServer server;
+    private final MicroBatcher batcher;
+    private final ServerMetrics metrics = new ServerMetrics();
+    private final ExecutorService requestExecutor;
+    private final boolean virtualThreads;
+    private final ScheduledExecutorService watcher;
+    private final File modelFile;
+    private final boolean mapWeights;
+    private long modelModified;
+
+    InferenceServer(InetSocketAddress address, File modelFile, long windowMicros, int maxBatch, long watchSecs, boolean mapWeights) throws IOException {
+        this.modelFile = modelFile;
+        this.mapWeights = mapWeights;
+        this.modelModified = modelFile.lastModified();
+        this.batcher = new MicroBatcher(loadPredictor(modelFile, mapWeights), windowMicros * 1000, maxBatch, MAX_QUEUED, metrics);
+        ExecutorService virtualExecutor = createVirtualThreadExecutor();
+        this.virtualThreads = virtualExecutor != null;
+        this.requestExecutor = virtualThreads ? virtualExecutor : Executors.newFixedThreadPool(Math.max(64, 2 * maxBatch), runnable -> {
+            Thread thread = new Thread(runnable, "inference-request");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = HttpServer.create(address, 0);
+        server.setExecutor(requestExecutor);
+        server.createContext("/predict", this::handlePredict);
+        server.createContext("/reload", this::handleReload);
+        server.createContext("/metrics", this::handleMetrics);
+        server.createContext("/health", this::handleHealth);
+        if (watchSecs > 0) {
+            this.watcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "model-watcher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            watcher.scheduleWithFixedDelay(this::reloadIfModified, watchSecs, watchSecs, TimeUnit.SECONDS);
+        } else {
+            this.watcher = null;
+        }
+    }
+
+    void start() {
+        server.start();
+    }
+
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    private static ExecutorService createVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    boolean mapsWeights() {
+        InferenceEngine predictor = batcher.getPredictor();
+        return predictor instanceof Predictor && ((Predictor) predictor).isMapped();
+    }
+
+    private static InferenceEngine loadPredictor(File file, boolean mapWeights) throws IOException {
+        if (ModelFile.isModelFile(file)) {
+            return mapWeights ? ModelFile.map(file) : ModelFile.read(file).createPredictor();
+        }
+        Object obj = SerializationUtils.deserialize(file.getPath());
+        if (obj instanceof Network) {
+            return ((Network) obj).createPredictor();
+        } else if (obj instanceof QuantizedPredictor) {
+            return (QuantizedPredictor) obj;
+        }
+        throw new IOException(String.format("Could not load a network from %s", file));
+    }
+
+    synchronized boolean reload() {
+        try {
+            long modified = modelFile.lastModified();
+            batcher.setPredictor(loadPredictor(modelFile, mapWeights));
+            modelModified = modified;
+            metrics.recordReload(true);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            System.out.printf("Could not reload the model (%s)\n", e.getMessage());
+            metrics.recordReload(false);
+            return false;
+        }
+    }
+
+    private synchronized void reloadIfModified() {
+        if (modelFile.lastModified() != modelModified) {
+            System.out.printf("Model %s changed, reloading\n", modelFile);
+            reload();
+        }
+    }
+
+    private void handlePredict(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        int status;
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                status = send(exchange, 405, "{\"error\": \"Use POST with the sample's features in the body\"}");
+            } else {
+                int k = parseTopK(exchange.getRequestURI().getQuery());
+                float[] sample = parseSample(exchange.getRequestBody());
+                double[] probs = batcher.submit(sample).get(REQUEST_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                status = send(exchange, 200, toJson(Prediction.topK(probs, k)));
+            }
+        } catch (IllegalArgumentException e) {
+            status = send(exchange, 400, errorJson(e.getMessage()));
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IllegalArgumentException) {
+                status = send(exchange, 400, errorJson(e.getCause().getMessage()));
+            } else if (e.getCause() instanceof RejectedExecutionException) {
+                status = send(exchange, 503, errorJson(e.getCause().getMessage()));
+            } else {
+                status = send(exchange, 500, errorJson(String.valueOf(e.getCause())));
+            }
+        } catch (TimeoutException e) {
+            status = send(exchange, 503, errorJson("Timed out waiting for a prediction"));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            status = send(exchange, 503, errorJson("Interrupted while waiting for a prediction"));
+        }
+        metrics.recordRequest("/predict", status, System.nanoTime() - start);
+    }
+
+    private void handleReload(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        int status;
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            status = send(exchange, 405, "{\"error\": \"Use POST to reload the model\"}");
+        } else if (reload()) {
+            status = send(exchange, 200, String.format("{\"reloaded\": true, \"model\": \"%s\"}", escape(modelFile.getPath())));
+        } else {
+            status = send(exchange, 500, String.format("{\"reloaded\": false, \"model\": \"%s\"}", escape(modelFile.getPath())));
+        }
+        metrics.recordRequest("/reload", status, System.nanoTime() - start);
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        byte[] body = metrics.toPrometheus(batcher.getQueueDepth()).getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private void handleHealth(HttpExchange exchange) throws IOException {
+        InferenceEngine predictor = batcher.getPredictor();
+        send(exchange, 200, String.format("{\"status\": \"ok\", \"inputs\": %d, \"outputs\": %d}", predictor.getNumInputs(), predictor.getNumOutputs()));
+    }
+
+    private static int send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+        return status;
+    }
+
+    private static int parseTopK(String query) {
+        if (query != null) {
+            for (String param : query.split("&")) {
+                if (param.startsWith("k=")) {
+                    try {
+                        return Integer.parseInt(param.substring(2));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException(String.format("Invalid top-k count %s", param.substring(2)));
+                    }
+                }
+            }
+        }
+        return 1;
+    }
+
+    private static float[] parseSample(InputStream body) throws IOException {
+        String text = new String(body.readAllBytes(), StandardCharsets.US_ASCII).trim();
+        if (text.startsWith("[") && text.endsWith("]")) {
+            text = text.substring(1, text.length() - 1).trim();
+        }
+        if (text.isEmpty()) {
+            throw new IllegalArgumentException("Request body has no features");
+        }
+        String[] tokens = text.split("[\\s,]+");
+        float[] sample = new float[tokens.length];
+        for (int elem = 0; elem < tokens.length; ++elem) {
+            try {
+                sample[elem] = Float.parseFloat(tokens[elem]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(String.format("Invalid feature #%d (%s)", elem + 1, tokens[elem]));
+            }
+        }
+        return sample;
+    }
+
+    private static String toJson(Prediction[] top) {
+        StringBuilder json = new StringBuilder(String.format(Locale.ROOT, "{\"label\": %d, \"probability\": %.6f, \"top\": [", top[0].label, top[0].probability));
+        for (int rank = 0; rank < top.length; ++rank) {
+            json.append(String.format(Locale.ROOT, "%s{\"label\": %d, \"probability\": %.6f}", rank > 0 ? ", " : "", top[rank].label, top[rank].probability));
+        }
+        return json.append("]}").toString();
+    }
+
+    private static String errorJson(String message) {
+        return String.format("{\"error\": \"%s\"}", escape(message));
+    }
+
+    private static String escape(String text) {
+        return text.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        batcher.close();
+        requestExecutor.shutdownNow();
+        if (watcher != null) {
+            watcher.shutdownNow();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: InferenceServer <network model|quantized.ser> [port=8080] [batch window us=2000] [max batch=64] [watch secs=5] [host=localhost] [weights=mapped|heap]");
+            return;
+        }
+        File modelFile = new File(args[0]);
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+        long windowMicros = args.length > 2 ? Long.parseLong(args[2]) : 2000;
+        int maxBatch = args.length > 3 ? Integer.parseInt(args[3]) : 64;
+        long watchSecs = args.length > 4 ? Long.parseLong(args[4]) : 5;
+        InetAddress host = args.length > 5 ? InetAddress.getByName(args[5]) : InetAddress.getLoopbackAddress();
+        boolean mapWeights = args.length <= 6 || "mapped".equalsIgnoreCase(args[6]);
+
+        InferenceServer server = new InferenceServer(new InetSocketAddress(host, port), modelFile, windowMicros, maxBatch, watchSecs, mapWeights);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        server.start();
+        System.out.printf("Serving %s on http://%s:%d (%s, %s kernels, %s weights, batch window %d us, max batch %d)\n", modelFile, host.getHostAddress(), server.getPort(), server.usesVirtualThreads() ? "virtual threads" : "platform thread pool", Matrix.getKernelsName(), server.mapsWeights() ? "mapped" : "heap", windowMicros, maxBatch);
+    }
+}
@@ -0,0 +1,284 @@
+import java.nio.ByteBuffer;
+
+interface Kernels {
+
+    Kernels INSTANCE = load(System.getProperty("kernels", "auto"));
+
+    static Kernels load(String choice) {
+        if (!"scalar".equalsIgnoreCase(choice)) {
+            try {
+                return (Kernels) Class.forName("VectorKernels").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                if ("vector".equalsIgnoreCase(choice)) {
+                    System.out.printf("Vector kernels are unavailable (%s), falling back to scalar kernels\n", e);
+                }
+            }
+        }
+        return new ScalarKernels();
+    }
+
+    String getName();
+
+    void axpy(double alpha, double[] vectX, int xOffset, double[] vectY, int yOffset, int num);
+
+    void axpy(float alpha, float[] vectX, int xOffset, float[] vectY, int yOffset, int num);
+
+    void axpy4(double a0, double a1, double a2, double a3, double[] vect, int vectOffset, double[] res, int res0, int res1, int res2, int res3, int num);
+
+    void axpy4(float a0, float a1, float a2, float a3, float[] vect, int vectOffset, float[] res, int res0, int res1, int res2, int res3, int num);
+
+    void axpy(double alpha, ByteBuffer vectX, int xOffset, double[] vectY, int yOffset, int num);
+
+    void axpy(float alpha, ByteBuffer vectX, int xOffset, float[] vectY, int yOffset, int num);
+
+    void axpy4(double a0, double a1, double a2, double a3, ByteBuffer vect, int vectOffset, double[] res, int res0, int res1, int res2, int res3, int num);
+
+    void axpy4(float a0, float a1, float a2, float a3, ByteBuffer vect, int vectOffset, float[] res, int res0, int res1, int res2, int res3, int num);
+
+    double dot(double[] vect1, int offset1, double[] vect2, int offset2, int num);
+
+    float dot(float[] vect1, int offset1, float[] vect2, int offset2, int num);
+
+    void dot4(double[] mat, int base0, int base1, int base2, int base3, double[] vect, int vectOffset, int num, double[] res, int resOffset);
+
+    void dot4(float[] mat, int base0, int base1, int base2, int base3, float[] vect, int vectOffset, int num, float[] res, int resOffset);
+
+    int dot(byte[] vect1, int offset1, byte[] vect2, int offset2, int num);
+
+    void dot4(byte[] mat, int base0, int base1, int base2, int base3, byte[] vect, int vectOffset, int num, int[] res, int resOffset);
+
+    void scale(double alpha, double[] vect, int offset, double[] res, int resOffset, int num);
+
+    void scale(float alpha, float[] vect, int offset, float[] res, int resOffset, int num);
+
+    void sigmoid(double[] in, int inOffset, double[] res, int resOffset, int num);
+
+    void sigmoid(float[] in, int inOffset, float[] res, int resOffset, int num);
+
+    void sigmoidBackward(double[] out, int outOffset, double[] grad, int gradOffset, double[] res, int resOffset, int num);
+
+    void sigmoidBackward(float[] out, int outOffset, float[] grad, int gradOffset, float[] res, int resOffset, int num);
+
+    double expSum(double[] in, int inOffset, double shift, double[] res, int resOffset, int num);
+
+    double expSum(float[] in, int inOffset, float shift, float[] res, int resOffset, int num);
+}
+
+class ScalarKernels implements Kernels {
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+
+    @Override
+    public void axpy(double alpha, double[] vectX, int xOffset, double[] vectY, int yOffset, int num) {
+        for (int elem = 0; elem < num; ++elem) {
+            vectY[yOffset + elem] += alpha * vectX[xOffset + elem];
+        }
+    }
+
+    @Override
+    public void axpy(float alpha, float[] vectX, int xOffset, float[] vectY, int yOffset, int num) {
+        for (int elem = 0; elem < num; ++elem) {
+            vectY[yOffset + elem] += alpha * vectX[xOffset + elem];
+        }
+    }
+
+    @Override
+    public void axpy4(double a0, double a1, double a2, double a3, double[] vect, int vectOffset, double[] res, int res0, int res1, int res2, int res3, int num) {
+        for (int elem = 0; elem < num; ++elem) {
+            double val = vect[vectOffset + elem];
+            res[res0 + elem] += a0 * val;
+            res[res1 + elem] += a1 * val;
+            res[res2 + elem] += a2 * val;
+            res[res3 + elem] += a3 * val;
+        }
+    }
+
+    @Override
+    public void axpy4(float a0, float a1, float a2, float a3, float[] vect, int vectOffset, float[] res, int res0, int res1, int res2, int res3, int num) {
+        for (int elem = 0; elem < num; ++elem) {
+            float val = vect[vectOffset + elem];
+            res[res0 + elem] += a0 * val;
+            res[res1 + elem] += a1 * val;
+            res[res2 + elem] += a2 * val;
+            res[res3 + elem] += a3 * val;
+        }
+    }
+
+    @Override
+    public void axpy(double alpha, ByteBuffer vectX, int xOffset, double[] vectY, int yOffset, int num) {
+        for (int elem = 0; elem < num; ++elem) {
+            vectY[yOffset + elem] += alpha * vectX.getDouble((xOffset + elem) * Double.BYTES);
+        }
+    }
+
+    @Override
+    public void axpy(float alpha, ByteBuffer vectX, int xOffset, float[] vectY, int yOffset, int num) {
+        for (int elem = 0; elem < num; ++elem) {
+            vectY[yOffset + elem] += alpha * vectX.getFloat((xOffset + elem) * Float.BYTES);
+        }
+    }
+
+    @Override
+    public void axpy4(double a0, double a1, double a2, double a3, ByteBuffer vect, int vectOffset, double[] res, int res0, int res1, int res2, int res3, int num) {
+        for (int elem = 0; elem < num; ++elem) {
+            double val = vect.getDouble((vectOffset + elem) * Double.BYTES);
+            res[res0 + elem] += a0 * val;
+            res[res1 + elem] += a1 * val;
+            res[res2 + elem] += a2 * val;
+            res[res3 + elem] += a3 * val;
+        }
+    }
+
+    @Override
+    public void axpy4(float a0, float a1, float a2, float a3, ByteBuffer vect, int vectOffset, float[] res, int res0, int res1, int res2, int res3, int num) {
+        for (int elem = 0; elem < num; ++elem) {
+            float val = vect.getFloat((vectOffset + elem) * Float.BYTES);
+            res[res0 + elem] += a0 * val;
+            res[res1 + elem] += a1 * val;
+            res[res2 + elem] += a2 * val;
+            res[res3 + elem] += a3 * val;
+        }
+    }
+
+    @Override
+    public double dot(double[] vect1, int offset1, double[] vect2, int offset2, int num) {
+        double res = 0.0;
+        for (int elem = 0; elem < num; ++elem) {
+            res += vect1[offset1 + elem] * vect2[offset2 + elem];
+        }
+        return res;
+    }
+
+    @Override
+    public float dot(float[] vect1, int offset1, float[] vect2, int offset2, int num) {
+        float res = 0.0f;
+        for (int elem = 0; elem < num; ++elem) {
+            res += vect1[offset1 + elem] * vect2[offset2 + elem];
+        }
+        return res;
+    }
+
+    @Override
+    public void dot4(double[] mat, int base0, int base1, int base2, int base3, double[] vect, int vectOffset, int num, double[] res, int resOffset) {
+        double sum0 = 0.0, sum1 = 0.0, sum2 = 0.0, sum3 = 0.0;
+        for (int elem = 0; elem < num; ++elem) {
+            double val = vect[vectOffset + elem];
+            sum0 += mat[base0 + elem] * val;
+            sum1 += mat[base1 + elem] * val;
+            sum2 += mat[base2 + elem] * val;
+            sum3 += mat[base3 + elem] * val;
+        }
+        res[resOffset] = sum0;
+        res[resOffset + 1] = sum1;
+        res[resOffset + 2] = sum2;
+        res[resOffset + 3] = sum3;
+    }
+
+    @Override
+    public void dot4(float[] mat, int base0, int base1, int base2, int base3, float[] vect, int vectOffset, int num, float[] res, int resOffset) {
+        float sum0 = 0.0f, sum1 = 0.0f, sum2 = 0.0f, sum3 = 0.0f;
+        for (int elem = 0; elem < num; ++elem) {
+            float val = vect[vectOffset + elem];
+            sum0 += mat[base0 + elem] * val;
+            sum1 += mat[base1 + elem] * val;
+            sum2 += mat[base2 + elem] * val;
+            sum3 += mat[base3 + elem] * val;
+        }
+        res[resOffset] = sum0;
+        res[resOffset + 1] = sum1;
+        res[resOffset + 2] = sum2;
+        res[resOffset + 3] = sum3;
+    }
+
+    @Override
+    public int dot(byte[] vect1, int offset1, byte[] vect2, int offset2, int num) {
+        int res = 0;
+        for (int elem = 0; elem < num; ++elem) {
+            res += vect1[offset1 + elem] * vect2[offset2 + elem];
+        }
+        return res;
+    }
+
+    @Override
+    public void dot4(byte[] mat, int base0, int base1, int base2, int base3, byte[] vect, int vectOffset, int num, int[] res, int resOffset) {
+        int sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+        for (int elem = 0; elem < num; ++elem) {
+            int val = vect[vectOffset + elem];
+            sum0 += mat[base0 + elem] * val;
+            sum1 += mat[base1 + elem] * val;
+            sum2 += mat[base2 + elem] * val;
+            sum3 += mat[base3 + elem] * val;
+        }
+        res[resOffset] = sum0;
+        res[resOffset + 1] = sum1;
+        res[resOffset + 2] = sum2;
+        res[resOffset + 3] = sum3;
+    }
+
+    @Override
+    public void scale(double alpha, double[] vect, int offset, double[] res, int resOffset, int num) {
+        for (int elem = 0; elem < num; ++elem) {
+            res[resOffset + elem] = alpha * vect[offset + elem];
+        }
+    }
+
+    @Override
+    public void scale(float alpha, float[] vect, int offset, float[] res, int resOffset, int num) {
+        for (int elem = 0; elem < num; ++elem) {
+            res[resOffset + elem] = alpha * vect[offset + elem];
+        }
+    }
+
+    @Override
+    public void sigmoid(double[] in, int inOffset, double[] res, int resOffset, int num) {
+        for (int elem = 0; elem < num; ++elem) {
+            res[resOffset + elem] = 1.0 / (1 + Math.exp(-in[inOffset + elem]));
+        }
+    }
+
+    @Override
+    public void sigmoid(float[] in, int inOffset, float[] res, int resOffset, int num) {
+        for (int elem = 0; elem < num; ++elem) {
+            res[resOffset + elem] = (float) (1.0 / (1 + Math.exp(-in[inOffset + elem])));
+        }
+    }
+
+    @Override
+    public void sigmoidBackward(double[] out, int outOffset, double[] grad, int gradOffset, double[] res, int resOffset, int num) {
+        for (int elem = 0; elem < num; ++elem) {
+            double val = out[outOffset + elem];
+            res[resOffset + elem] = grad[gradOffset + elem] * val * (1 - val);
+        }
+    }
+
+    @Override
+    public void sigmoidBackward(float[] out, int outOffset, float[] grad, int gradOffset, float[] res, int resOffset, int num) {
+        for (int elem = 0; elem < num; ++elem) {
+            float val = out[outOffset + elem];
+            res[resOffset + elem] = grad[gradOffset + elem] * val * (1 - val);
+        }
+    }
+
+    @Override
+    public double expSum(double[] in, int inOffset, double shift, double[] res, int resOffset, int num) {
+        double sum = 0.0;
+        for (int elem = 0; elem < num; ++elem) {
+            res[resOffset + elem] = Math.exp(in[inOffset + elem] - shift);
+            sum += res[resOffset + elem];
+        }
+        return sum;
+    }
+
+    @Override
+    public double expSum(float[] in, int inOffset, float shift, float[] res, int resOffset, int num) {
+        double sum = 0.0;
+        for (int elem = 0; elem < num; ++elem) {
+            res[resOffset + elem] = (float) Math.exp(in[inOffset + elem] - shift);
+            sum += res[resOffset + elem];
+        }
+        return sum;
+    }
+}
@@ -24,7 +24,11 @@ public class Main {
             System.out.println("5. Set network training dataset");
             System.out.println("6. Save network configuration");
             System.out.println("7. Display network parameters");
-            System.out.println("8. Exit");
+            System.out.println("8. Convert dataset to packed binary format");
+            System.out.println("9. Set dataset cache memory budget");
+            System.out.println("10. Convert serialized network to binary model format");
+            System.out.println("11. Configure optimizer");
+            System.out.println("12. Exit");
             System.out.print("Your choice: ");
             try {
                 int choice = Integer.parseInt(scanner.nextLine());
@@ -76,18 +80,32 @@ public class Main {
                         System.out.print("Enter the path to the training dataset: ");
                         String inputDataFile = scanner.nextLine();
 
-                        System.out.print("Enter the scaling methods for the dataset\n0. No scaling method\n1. Normalize\n2. Centre\n3. Standardize\nEnter your choice: ");
+                        System.out.print("Enter the scaling methods for the dataset\n0. No scaling method\n1. Normalize\n2. Centre\n3. Standardize\n4. Standardize per pixel\nEnter your choice: ");
                         int scaleMethodChoice = Integer.parseInt(scanner.nextLine());
                         double scaleFactor = 1.0;
                         if (scaleMethodChoice == 1) {
                             System.out.println("Enter the scale factor for normalization");
                             scaleFactor = Double.parseDouble(scanner.nextLine());
-                        } else if (scaleMethodChoice > 3 || scaleMethodChoice < 0) {
+                        } else if (scaleMethodChoice > 4 || scaleMethodChoice < 0) {
                             System.out.println("Invalid choice. Exiting network creation.");
                             continue menu;
                         }
 
-                        network = Network.createNetwork(layerSizes, lossType, activFuncType, numInputs, learnRate, inputDataFile, scaleMethodChoice, scaleFactor);
+                        Precision precision;
+                        System.out.printf("Enter the compute precision %s:\n", Arrays.toString(Precision.values()));
+                        switch (scanner.nextLine().toLowerCase()) {
+                            case "float64":
+                                precision = Precision.FLOAT64;
+                                break;
+                            case "float32":
+                                precision = Precision.FLOAT32;
+                                break;
+                            default:
+                                System.out.println("Precision not supported/existent. Exiting network creation.");
+                                continue menu;
+                        }
+
+                        network = Network.createNetwork(layerSizes, lossType, activFuncType, numInputs, learnRate, inputDataFile, scaleMethodChoice, scaleFactor, precision);
                         if (network == null) {
                             System.out.println("Exiting network creation.");
                         } else {
@@ -100,7 +118,7 @@ public class Main {
                     case 2:
                         System.out.println("Enter the path to the network configuration file:");
                         networkConfigPath = scanner.nextLine();
-                        network = (Network) SerializationUtils.deserialize(networkConfigPath);
+                        network = ModelFile.load(networkConfigPath);
                         if (network != null) {
                             System.out.println("Successfully loaded network configurations!");
                             networkSaved = true;
@@ -108,10 +126,87 @@ public class Main {
                         break;
                     case 3:
                         if (network != null) {
-                            System.out.print("Enter the number of epochs for training: ");
-                            int numEpochs = Integer.parseInt(scanner.nextLine());
+                            boolean resume = false;
+                            if (network.getTrainingState() != null) {
+                                System.out.printf("Resume the interrupted training run at %s? (y/n): ", network.getTrainingState());
+                                resume = scanner.nextLine().equalsIgnoreCase("y");
+                            }
+                            int numEpochs = 0;
+                            int batchSize = 0;
+                            long seed = 0;
+                            if (!resume) {
+                                System.out.print("Enter the number of epochs for training: ");
+                                numEpochs = Integer.parseInt(scanner.nextLine());
+                                System.out.print("Enter the batch size for training: ");
+                                batchSize = Integer.parseInt(scanner.nextLine());
+                            }
+                            System.out.printf("Enter the number of training threads (available cores: %d): ", Runtime.getRuntime().availableProcessors());
+                            int numThreads = Integer.parseInt(scanner.nextLine());
+                            if (!resume) {
+                                System.out.print("Enter the seed for shuffling the dataset (leave blank for a random seed): ");
+                                String seedLine = scanner.nextLine();
+                                seed = seedLine.isEmpty() ? System.nanoTime() : Long.parseLong(seedLine);
+                            }
+                            TrainingMode mode;
+                            System.out.printf("Enter the training mode %s:\n", Arrays.toString(TrainingMode.values()));
+                            switch (scanner.nextLine().toLowerCase()) {
+                                case "synchronous":
+                                    mode = TrainingMode.SYNCHRONOUS;
+                                    break;
+                                case "hogwild":
+                                    mode = TrainingMode.HOGWILD;
+                                    break;
+                                default:
+                                    System.out.println("Training mode not supported/existent. Returning to menu.");
+                                    continue menu;
+                            }
+                            System.out.print("Enter the fraction of the dataset to hold out for validation (0 to disable): ");
+                            double validationFraction = Double.parseDouble(scanner.nextLine());
+                            TrainingController controller = null;
+                            if (validationFraction > 0) {
+                                System.out.print("Enter the validation interval in batches (0 to validate once per epoch): ");
+                                int evalInterval = Integer.parseInt(scanner.nextLine());
+                                System.out.print("Enter the early stopping patience in validations (0 to disable): ");
+                                int patience = Integer.parseInt(scanner.nextLine());
+                                System.out.print("Enter the minimum accuracy improvement in % (leave blank for any improvement): ");
+                                String minDeltaLine = scanner.nextLine();
+                                System.out.print("Enter the target validation accuracy in % for time-to-accuracy (leave blank to skip): ");
+                                String targetLine = scanner.nextLine();
+                                System.out.print("Enter the path to save the best checkpoint to (leave blank to skip): ");
+                                String checkpointPath = scanner.nextLine();
+                                try {
+                                    controller = new TrainingController(validationFraction, evalInterval, patience, minDeltaLine.isEmpty() ? 0.0 : Double.parseDouble(minDeltaLine), targetLine.isEmpty() ? 0.0 : Double.parseDouble(targetLine), checkpointPath.isEmpty() ? null : new File(checkpointPath));
+                                } catch (IllegalArgumentException e) {
+                                    System.out.printf("Could not set up validation! (%s)\n", e.getMessage());
+                                    continue menu;
+                                }
+                            }
+                            System.out.print("Enter the base path for periodic crash-safe checkpoints (leave blank to disable): ");
+                            String checkpointBase = scanner.nextLine();
+                            Checkpointer checkpointer = null;
+                            if (!checkpointBase.isEmpty()) {
+                                System.out.print("Enter the checkpoint interval in batches (0 to disable): ");
+                                int everyBatches = Integer.parseInt(scanner.nextLine());
+                                System.out.print("Enter the checkpoint interval in seconds (0 to disable): ");
+                                long everySecs = Long.parseLong(scanner.nextLine());
+                                System.out.print("Enter the number of checkpoints to keep: ");
+                                int maxKept = Integer.parseInt(scanner.nextLine());
+                                try {
+                                    checkpointer = new Checkpointer(new File(checkpointBase), everyBatches, everySecs, maxKept);
+                                } catch (IllegalArgumentException e) {
+                                    System.out.printf("Could not set up checkpointing! (%s)\n", e.getMessage());
+                                    if (controller != null) {
+                                        controller.close();
+                                    }
+                                    continue menu;
+                                }
+                            }
                             System.out.println("Learning...");
-                            network.train(numEpochs);
+                            if (resume) {
+                                network.resume(numThreads, mode, controller, checkpointer);
+                            } else {
+                                network.train(numEpochs, batchSize, numThreads, seed, mode, controller, checkpointer);
+                            }
                             networkSaved = false;
                         } else {
                             System.out.println("No network loaded!");
@@ -140,7 +235,7 @@ public class Main {
                         if (network != null) {
                             System.out.println("Enter the path to the network configuration file:");
                             networkConfigPath = scanner.nextLine();
-                            networkSaved = SerializationUtils.serialize(network, networkConfigPath);
+                            networkSaved = ModelFile.save(network, networkConfigPath);
                         } else {
                             System.out.println("No network loaded!");
                         }
@@ -153,6 +248,85 @@ public class Main {
                         }
                         break;
                     case 8:
+                        System.out.println("Enter the path to the dataset to convert:");
+                        String sourcePath = scanner.nextLine();
+                        System.out.println("Enter the path to the packed dataset file:");
+                        String packedPath = scanner.nextLine();
+                        if (new File(sourcePath).exists()) {
+                            try {
+                                PackedDataset.write(Dataset.open(new File(sourcePath)), TextDataset.NUM_ROWS, TextDataset.NUM_COLS, new File(packedPath));
+                            } catch (IllegalArgumentException e) {
+                                System.out.printf("Could not convert dataset! (%s)\n", e.getMessage());
+                            }
+                        } else {
+                            System.out.println("Dataset does not exist!");
+                        }
+                        break;
+                    case 9:
+                        if (network != null) {
+                            System.out.printf("Enter the dataset cache memory budget in MB (current: %d MB): ", network.getCacheBudget() >> 20);
+                            long cacheBudgetMB = Long.parseLong(scanner.nextLine());
+                            if (cacheBudgetMB < 0) {
+                                System.out.println("Cannot have a negative memory budget!");
+                            } else {
+                                network.setCacheBudget(cacheBudgetMB << 20);
+                            }
+                        } else {
+                            System.out.println("No network loaded!");
+                        }
+                        break;
+                    case 10:
+                        System.out.println("Enter the path to the serialized network to convert:");
+                        String serPath = scanner.nextLine();
+                        System.out.println("Enter the path to the binary model file:");
+                        String modelPath = scanner.nextLine();
+                        if (new File(serPath).exists()) {
+                            ModelFile.convert(serPath, modelPath);
+                        } else {
+                            System.out.println("Network file does not exist!");
+                        }
+                        break;
+                    case 11:
+                        if (network != null) {
+                            try {
+                                System.out.printf("Enter the optimizer %s:\n", Arrays.toString(OptimizerType.values()));
+                                OptimizerType optimizerType = OptimizerType.valueOf(scanner.nextLine().toUpperCase());
+                                System.out.printf("Enter the learning rate (current: %.3f, leave blank to keep): ", network.getLayers()[0].getLearnRate());
+                                String learnRateLine = scanner.nextLine();
+                                System.out.printf("Enter the learning rate schedule %s:\n", Arrays.toString(LearnRateSchedule.values()));
+                                LearnRateSchedule schedule = LearnRateSchedule.valueOf(scanner.nextLine().toUpperCase());
+                                int scheduleEpochs = 1;
+                                double gamma = 1.0;
+                                if (schedule != LearnRateSchedule.CONSTANT) {
+                                    System.out.print("Enter the number of epochs the schedule spans: ");
+                                    scheduleEpochs = Integer.parseInt(scanner.nextLine());
+                                }
+                                if (schedule == LearnRateSchedule.STEP || schedule == LearnRateSchedule.EXPONENTIAL) {
+                                    System.out.print("Enter the learning rate decay factor: ");
+                                    gamma = Double.parseDouble(scanner.nextLine());
+                                }
+                                System.out.print("Enter the gradient clipping norm (0 to disable): ");
+                                double clipNorm = Double.parseDouble(scanner.nextLine());
+                                double weightDecay = 0.0;
+                                if (optimizerType == OptimizerType.ADAMW) {
+                                    System.out.printf("Enter the weight decay (default: %.3f): ", Optimizer.DEFAULT_WEIGHT_DECAY);
+                                    weightDecay = Double.parseDouble(scanner.nextLine());
+                                }
+                                Optimizer optimizer = Optimizer.createOptimizer(optimizerType, weightDecay, clipNorm, schedule, scheduleEpochs, gamma);
+                                if (!learnRateLine.isEmpty()) {
+                                    network.setLearnRate(Double.parseDouble(learnRateLine));
+                                }
+                                network.setOptimizer(optimizer);
+                                networkSaved = false;
+                                System.out.println(optimizer);
+                            } catch (IllegalArgumentException e) {
+                                System.out.printf("Could not configure the optimizer! (%s)\n", e.getMessage());
+                            }
+                        } else {
+                            System.out.println("No network loaded!");
+                        }
+                        break;
+                    case 12:
                         if (network != null && !networkSaved) {
                             System.out.println("Network configurations not saved! Last warning issued!");
                             networkSaved = true;
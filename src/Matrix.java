@@ -1,203 +1,672 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+enum Precision {
+    FLOAT64,
+    FLOAT32
+}
+
 class Matrix {
 
-    static double[][] makeMatrix(double[] vect, int m, int n) {
-        if ((m != 1 && n != 1) || vect.length != Math.max(m, n)) {
-            throw new IllegalArgumentException(String.format("Cannot make a matrix (%dx%d) of vector (size:%d) with the following parameters\n", m, n, vect.length));
+    private final int rows;
+    private final int cols;
+    private final int stride;
+    private final int offset;
+    private final double[] data;
+    private final float[] floatData;
+
+    Matrix(int rows, int cols) {
+        this(rows, cols, new double[rows * cols]);
+    }
+
+    Matrix(int rows, int cols, Precision precision) {
+        this(rows, cols, cols, 0, precision == Precision.FLOAT32 ? null : new double[rows * cols], precision == Precision.FLOAT32 ? new float[rows * cols] : null);
+    }
+
+    Matrix(int rows, int cols, double[] data) {
+        this(rows, cols, cols, 0, data);
+    }
+
+    Matrix(int rows, int cols, float[] floatData) {
+        this(rows, cols, cols, 0, null, floatData);
+    }
+
+    Matrix(int rows, int cols, int stride, int offset, double[] data) {
+        this(rows, cols, stride, offset, data, null);
+    }
+
+    private Matrix(int rows, int cols, int stride, int offset, double[] data, float[] floatData) {
+        int size = (data != null) ? data.length : floatData.length;
+        if (rows < 0 || cols < 0 || stride < cols || offset < 0) {
+            throw new IllegalArgumentException(String.format("Invalid matrix layout (%dx%d) [STRIDE = %d] [OFFSET = %d]\n", rows, cols, stride, offset));
+        } else if (rows > 0 && offset + (rows - 1) * stride + cols > size) {
+            throw new IllegalArgumentException(String.format("Matrix (%dx%d) [STRIDE = %d] [OFFSET = %d] does not fit in storage (size:%d)\n", rows, cols, stride, offset, size));
         }
-        double[][] res = new double[m][n];
-        int elem = 0;
-        for (int row = 0; row < m; ++row) {
-            for (int col = 0; col < n; ++col) {
-                res[row][col] = vect[elem];
-                ++elem;
-            }
+        this.rows = rows;
+        this.cols = cols;
+        this.stride = stride;
+        this.offset = offset;
+        this.data = data;
+        this.floatData = floatData;
+    }
+
+    int getRows() {
+        return rows;
+    }
+
+    int getCols() {
+        return cols;
+    }
+
+    int getStride() {
+        return stride;
+    }
+
+    int getOffset() {
+        return offset;
+    }
+
+    double[] getData() {
+        if (data == null) {
+            throw new IllegalStateException("Matrix stores FLOAT32 values");
+        }
+        return data;
+    }
+
+    float[] getFloatData() {
+        if (floatData == null) {
+            throw new IllegalStateException("Matrix stores FLOAT64 values");
+        }
+        return floatData;
+    }
+
+    Precision getPrecision() {
+        return (floatData != null) ? Precision.FLOAT32 : Precision.FLOAT64;
+    }
+
+    boolean isFloat() {
+        return floatData != null;
+    }
+
+    boolean isContiguous() {
+        return stride == cols;
+    }
+
+    int indexOf(int row, int col) {
+        return offset + row * stride + col;
+    }
+
+    double get(int row, int col) {
+        return (floatData != null) ? floatData[indexOf(row, col)] : data[indexOf(row, col)];
+    }
+
+    void set(int row, int col, double val) {
+        if (floatData != null) {
+            floatData[indexOf(row, col)] = (float) val;
+        } else {
+            data[indexOf(row, col)] = val;
         }
+    }
+
+    Matrix topRows(int numRows) {
+        return (numRows == rows) ? this : rowRange(0, numRows);
+    }
+
+    Matrix rowRange(int startRow, int numRows) {
+        if (startRow < 0 || numRows < 0 || startRow + numRows > rows) {
+            throw new IllegalArgumentException(String.format("Cannot take rows [%d, %d) of matrix (%dx%d)\n", startRow, startRow + numRows, rows, cols));
+        }
+        return new Matrix(numRows, cols, stride, indexOf(startRow, 0), data, floatData);
+    }
+
+    Matrix copy() {
+        return copy(getPrecision());
+    }
+
+    Matrix copy(Precision precision) {
+        Matrix res = new Matrix(rows, cols, precision);
+        convert(this, res);
         return res;
     }
 
-    static double[] makeVector(double[][] mat, int m, int n) {
-        if (m != 1 && n != 1) {
-            throw new IllegalArgumentException(String.format("Cannot make a vector from matrix (%dx%d)\n", m, n));
+    Matrix toPrecision(Precision precision) {
+        return (precision == getPrecision()) ? this : copy(precision);
+    }
+
+    static void convert(Matrix mat, Matrix res) {
+        checkSameShape(mat, res, "conversion");
+        for (int row = 0; row < mat.rows; ++row) {
+            int base = mat.indexOf(row, 0);
+            int resBase = res.indexOf(row, 0);
+            if (mat.floatData != null && res.floatData != null) {
+                System.arraycopy(mat.floatData, base, res.floatData, resBase, mat.cols);
+            } else if (mat.floatData != null) {
+                for (int col = 0; col < mat.cols; ++col) {
+                    res.data[resBase + col] = mat.floatData[base + col];
+                }
+            } else if (res.floatData != null) {
+                for (int col = 0; col < mat.cols; ++col) {
+                    res.floatData[resBase + col] = (float) mat.data[base + col];
+                }
+            } else {
+                System.arraycopy(mat.data, base, res.data, resBase, mat.cols);
+            }
         }
-        double[] res = new double[Math.max(m, n)];
-        int elem = 0;
+    }
+
+    static Matrix fromJagged(double[][] mat, int m, int n) {
+        Matrix res = new Matrix(m, n);
         for (int row = 0; row < m; ++row) {
-            for (int col = 0; col < n; ++col) {
-                res[elem] = mat[row][col];
-                ++elem;
+            if (mat[row].length != n) {
+                throw new IllegalArgumentException(String.format("Cannot make a matrix (%dx%d) from row #%d (size:%d)\n", m, n, row, mat[row].length));
             }
+            System.arraycopy(mat[row], 0, res.data, row * n, n);
         }
         return res;
     }
 
-    static double[][] multiply(double[] vect, double[][] mat, int m, int n) {
-        try {
-            double[][] matFromVect = makeMatrix(vect, 1, m);
-            return multiply(matFromVect, 1, m, mat, m, n);
-        } catch (IllegalArgumentException e) {
-            throw new IllegalArgumentException(String.format("Cannot multiply matrices MAT1(1x%d) X MAT2(%dx%d)\n", vect.length, m, n));
+    static double[] multiply(double[] vect, Matrix mat) {
+        double[] res = new double[mat.cols];
+        gemv(vect, mat, res);
+        return res;
+    }
+
+    static void gemv(double[] vect, Matrix mat, double[] res) {
+        if (vect.length != mat.rows || res.length != mat.cols) {
+            throw new IllegalArgumentException(String.format("Cannot multiply matrices MAT1(1x%d) X MAT2(%dx%d) into vector (size:%d)\n", vect.length, mat.rows, mat.cols, res.length));
         }
+        requireDouble(mat, "vector multiplication");
+        Arrays.fill(res, 0.0);
+        gemvKernel(vect, 0, mat, res, 0);
     }
 
-    static double[][] multiply(double[][] mat, int m, int n, double[] vect) {
-        try {
-            double[][] matFromVect = makeMatrix(vect, n, 1);
-            return multiply(mat, m, n, matFromVect, n, 1);
-        } catch (IllegalArgumentException e) {
-            throw new IllegalArgumentException(String.format("Cannot multiply matrices MAT1(%dx%d) X MAT2(%dx1)\n", m, n, vect.length));
+    static void axpy(double alpha, double[] vectX, double[] vectY) {
+        if (vectX.length != vectY.length) {
+            throw new IllegalArgumentException(String.format("Cannot perform axpy on vectors with different sizes! (%d, %d)", vectX.length, vectY.length));
         }
+        KERNELS.axpy(alpha, vectX, 0, vectY, 0, vectX.length);
     }
 
-    static double[][] multiply(double[] vect1, double[] vect2) {
-        double[][] mat1 = makeMatrix(vect1, vect1.length, 1);
-        double[][] mat2 = makeMatrix(vect2, 1, vect2.length);
-        return  multiply(mat1, vect1.length, 1, mat2, 1, vect2.length);
+    static void gemm(Matrix mat1, Matrix mat2, Matrix res) {
+        gemm(mat1, mat2, null, res);
     }
 
-    static double dotProduct(double[] vect1, double[] vect2) {
-        if (vect1.length != vect2.length) {
-            throw new IllegalArgumentException(String.format("Cannot perform dot product on vectors with different sizes! (%d, %d)\n", vect1.length, vect2.length));
+    static void gemm(Matrix mat1, Matrix mat2, double[] bias, Matrix res) {
+        if (mat1.cols != mat2.rows || res.rows != mat1.rows || res.cols != mat2.cols) {
+            throw new IllegalArgumentException(String.format("Cannot multiply matrices MAT1(%dx%d) X MAT2(%dx%d) into matrix (%dx%d)\n", mat1.rows, mat1.cols, mat2.rows, mat2.cols, res.rows, res.cols));
         }
-        double res = 0.0;
-        for (int elem = 0; elem < vect1.length; ++elem) {
-            res += vect1[elem] * vect2[elem];
+        boolean isFloat = checkSamePrecision(mat1, mat2, res, "multiplication");
+        initRows(res, bias);
+        if (isFloat) {
+            if (mat1.rows == 1) {
+                gemvFloatKernel(mat1.floatData, mat1.offset, mat2, res.floatData, res.offset);
+            } else {
+                gemmFloatKernel(mat1, mat2, res);
+            }
+        } else if (mat1.rows == 1) {
+            gemvKernel(mat1.data, mat1.offset, mat2, res.data, res.offset);
+        } else {
+            gemmKernel(mat1, mat2, res);
+        }
+    }
+
+    static void gemm(Matrix mat1, MappedMatrix mat2, double[] bias, Matrix res) {
+        if (mat1.cols != mat2.getRows() || res.rows != mat1.rows || res.cols != mat2.getCols()) {
+            throw new IllegalArgumentException(String.format("Cannot multiply matrices MAT1(%dx%d) X MAT2(%dx%d) into matrix (%dx%d)\n", mat1.rows, mat1.cols, mat2.getRows(), mat2.getCols(), res.rows, res.cols));
+        } else if (mat1.getPrecision() != mat2.getPrecision() || res.getPrecision() != mat2.getPrecision()) {
+            throw new IllegalArgumentException(String.format("Cannot perform multiplication on matrices of mixed precision (%s, %s, %s)\n", mat1.getPrecision(), mat2.getPrecision(), res.getPrecision()));
+        }
+        initRows(res, bias);
+        if (mat1.isFloat()) {
+            gemmMappedFloatKernel(mat1, mat2, res);
+        } else {
+            gemmMappedKernel(mat1, mat2, res);
         }
-        return res;
     }
 
-    static double[][] multiply(double[][] mat1, int m1, int n1, double[][] mat2, int m2, int n2) {
-        if (n1 != m2) {
-            throw new IllegalArgumentException(String.format("Cannot multiply matrices MAT1(%dx%d) X MAT2(%dx%d)\n", m1, n1, m2, n2));
+    static void gemmTransA(Matrix mat1, Matrix mat2, Matrix res) {
+        if (mat1.rows != mat2.rows || res.rows != mat1.cols || res.cols != mat2.cols) {
+            throw new IllegalArgumentException(String.format("Cannot multiply matrices MAT1'(%dx%d) X MAT2(%dx%d) into matrix (%dx%d)\n", mat1.cols, mat1.rows, mat2.rows, mat2.cols, res.rows, res.cols));
         }
-        double[][] res = new double[m1][n2];
-        for (int row = 0; row < m1; ++row) {
-            for (int col = 0; col < n2; ++col) {
-                res[row][col] = multiplyForElem(mat1, row, mat2, col, n1);
+        fill(res, 0.0);
+        if (checkSamePrecision(mat1, mat2, res, "multiplication")) {
+            if (mat1.rows == 1) {
+                rank1FloatKernel(mat1.floatData, mat1.offset, mat2.floatData, mat2.offset, res);
+            } else {
+                gemmTransAFloatKernel(mat1, mat2, res);
             }
+        } else if (mat1.rows == 1) {
+            rank1Kernel(1.0, mat1.data, mat1.offset, mat2.data, mat2.offset, res);
+        } else {
+            gemmTransAKernel(mat1, mat2, res);
         }
-        return res;
     }
 
-    private static double multiplyForElem(double[][] mat1, int row, double[][] mat2, int col, int num) {
-        double res = 0.0;
-        for (int elem = 0; elem < num; ++elem) {
-            res += mat1[row][elem] * mat2[elem][col];
+    static void gemmTransB(Matrix mat1, Matrix mat2, Matrix res) {
+        if (mat1.cols != mat2.cols || res.rows != mat1.rows || res.cols != mat2.rows) {
+            throw new IllegalArgumentException(String.format("Cannot multiply matrices MAT1(%dx%d) X MAT2'(%dx%d) into matrix (%dx%d)\n", mat1.rows, mat1.cols, mat2.cols, mat2.rows, res.rows, res.cols));
+        }
+        boolean isFloat = checkSamePrecision(mat1, mat2, res, "multiplication");
+        for (int rowBlock = 0; rowBlock < mat2.rows; rowBlock += BLOCK_N) {
+            int rowEnd = Math.min(rowBlock + BLOCK_N, mat2.rows);
+            for (int row = 0; row < mat1.rows; ++row) {
+                if (isFloat) {
+                    gemvTransFloatKernel(mat2, rowBlock, rowEnd, mat1.floatData, mat1.indexOf(row, 0), res.floatData, res.indexOf(row, 0));
+                } else {
+                    gemvTransKernel(mat2, rowBlock, rowEnd, mat1.data, mat1.indexOf(row, 0), res.data, res.indexOf(row, 0));
+                }
+            }
         }
-        return res;
     }
 
-    static double[][] multiplyElemWise(double[][] mat1, double[][] mat2, int m, int n) {
-        double[][] res = new double[m][n];
-        for (int row = 0; row < m; ++row) {
-            for (int col = 0; col < n; ++col) {
-                res[row][col] = mat1[row][col] * mat2[row][col];
+    private static final int BLOCK_K = 128;
+    private static final int BLOCK_N = 256;
+    private static final Kernels KERNELS = Kernels.INSTANCE;
+
+    static String getKernelsName() {
+        return KERNELS.getName();
+    }
+
+    private static void gemvKernel(double[] vect, int vectOffset, Matrix mat, double[] res, int resOffset) {
+        for (int row = 0; row < mat.rows; ++row) {
+            double scalar = vect[vectOffset + row];
+            if (scalar == 0.0) {
+                continue;
             }
+            KERNELS.axpy(scalar, mat.data, mat.indexOf(row, 0), res, resOffset, mat.cols);
         }
-        return res;
     }
 
-    static double[] multiplyElemWise(double[] vect1, double[] vect2) {
-        if (vect1.length != vect2.length) {
-            throw new IllegalArgumentException(String.format("Cannot perform element-wise multiplication for unequal vectors! (%d, %d)", vect1.length, vect2.length));
+    private static void gemvTransKernel(Matrix mat, int rowStart, int rowEnd, double[] vect, int vectOffset, double[] res, int resOffset) {
+        int num = mat.cols;
+        int row = rowStart;
+        for (; row + 4 <= rowEnd; row += 4) {
+            int base = mat.indexOf(row, 0);
+            KERNELS.dot4(mat.data, base, base + mat.stride, base + 2 * mat.stride, base + 3 * mat.stride, vect, vectOffset, num, res, resOffset + row);
         }
-        double[] res = new double[vect1.length];
-        for (int elem = 0; elem < vect1.length; ++elem) {
-            res[elem] = vect1[elem] * vect2[elem];
+        for (; row < rowEnd; ++row) {
+            res[resOffset + row] = KERNELS.dot(mat.data, mat.indexOf(row, 0), vect, vectOffset, num);
         }
-        return res;
     }
 
-    static double[][] transpose(double[][] mat, int m, int n) {
-        double[][] res = new double[n][m];
-        for (int row = 0; row < n; ++row) {
-            for (int col = 0; col < m; ++col) {
-                res[row][col] = mat[col][row];
+    private static void rank1Kernel(double alpha, double[] vectX, int xOffset, double[] vectY, int yOffset, Matrix mat) {
+        for (int row = 0; row < mat.rows; ++row) {
+            double scalar = alpha * vectX[xOffset + row];
+            if (scalar == 0.0) {
+                continue;
             }
+            KERNELS.axpy(scalar, vectY, yOffset, mat.data, mat.indexOf(row, 0), mat.cols);
         }
-        return res;
     }
 
-    static double[] transpose(double[] vect) {
-        return vect.clone();
+    private static void gemmKernel(Matrix mat1, Matrix mat2, Matrix res) {
+        int m = mat1.rows;
+        int k = mat1.cols;
+        int n = mat2.cols;
+        for (int kBlock = 0; kBlock < k; kBlock += BLOCK_K) {
+            int kEnd = Math.min(kBlock + BLOCK_K, k);
+            for (int nBlock = 0; nBlock < n; nBlock += BLOCK_N) {
+                int num = Math.min(nBlock + BLOCK_N, n) - nBlock;
+                int row = 0;
+                for (; row + 4 <= m; row += 4) {
+                    int res0 = res.indexOf(row, nBlock);
+                    int res1 = res0 + res.stride;
+                    int res2 = res1 + res.stride;
+                    int res3 = res2 + res.stride;
+                    for (int elem = kBlock; elem < kEnd; ++elem) {
+                        int base = mat1.indexOf(row, elem);
+                        double a0 = mat1.data[base];
+                        double a1 = mat1.data[base + mat1.stride];
+                        double a2 = mat1.data[base + 2 * mat1.stride];
+                        double a3 = mat1.data[base + 3 * mat1.stride];
+                        KERNELS.axpy4(a0, a1, a2, a3, mat2.data, mat2.indexOf(elem, nBlock), res.data, res0, res1, res2, res3, num);
+                    }
+                }
+                for (; row < m; ++row) {
+                    int resBase = res.indexOf(row, nBlock);
+                    for (int elem = kBlock; elem < kEnd; ++elem) {
+                        KERNELS.axpy(mat1.data[mat1.indexOf(row, elem)], mat2.data, mat2.indexOf(elem, nBlock), res.data, resBase, num);
+                    }
+                }
+            }
+        }
     }
 
-    static double[][] multiplyScalar(double[][] mat, int m , int n, double scalar) {
-        double[][] res = new double[m][n];
-        for (int row = 0; row < m; ++row) {
-            for (int col = 0; col < n; ++col) {
-                res[row][col] = scalar * mat[row][col];
+    private static void gemmMappedKernel(Matrix mat1, MappedMatrix mat2, Matrix res) {
+        ByteBuffer weights = mat2.getBuffer();
+        int m = mat1.rows;
+        int k = mat1.cols;
+        int n = mat2.getCols();
+        for (int kBlock = 0; kBlock < k; kBlock += BLOCK_K) {
+            int kEnd = Math.min(kBlock + BLOCK_K, k);
+            for (int nBlock = 0; nBlock < n; nBlock += BLOCK_N) {
+                int num = Math.min(nBlock + BLOCK_N, n) - nBlock;
+                int row = 0;
+                for (; row + 4 <= m; row += 4) {
+                    int res0 = res.indexOf(row, nBlock);
+                    int res1 = res0 + res.stride;
+                    int res2 = res1 + res.stride;
+                    int res3 = res2 + res.stride;
+                    for (int elem = kBlock; elem < kEnd; ++elem) {
+                        int base = mat1.indexOf(row, elem);
+                        double a0 = mat1.data[base];
+                        double a1 = mat1.data[base + mat1.stride];
+                        double a2 = mat1.data[base + 2 * mat1.stride];
+                        double a3 = mat1.data[base + 3 * mat1.stride];
+                        KERNELS.axpy4(a0, a1, a2, a3, weights, mat2.indexOf(elem, nBlock), res.data, res0, res1, res2, res3, num);
+                    }
+                }
+                for (; row < m; ++row) {
+                    int resBase = res.indexOf(row, nBlock);
+                    for (int elem = kBlock; elem < kEnd; ++elem) {
+                        KERNELS.axpy(mat1.data[mat1.indexOf(row, elem)], weights, mat2.indexOf(elem, nBlock), res.data, resBase, num);
+                    }
+                }
             }
         }
-        return res;
     }
 
-    static double[] multiplyScalar(double[] vect, double scalar){
-        double[] res = new double[vect.length];
-        for (int elem = 0; elem < vect.length; ++elem) {
-            res[elem] = scalar * vect[elem];
+    private static void gemmMappedFloatKernel(Matrix mat1, MappedMatrix mat2, Matrix res) {
+        ByteBuffer weights = mat2.getBuffer();
+        int m = mat1.rows;
+        int k = mat1.cols;
+        int n = mat2.getCols();
+        for (int kBlock = 0; kBlock < k; kBlock += BLOCK_K) {
+            int kEnd = Math.min(kBlock + BLOCK_K, k);
+            for (int nBlock = 0; nBlock < n; nBlock += BLOCK_N) {
+                int num = Math.min(nBlock + BLOCK_N, n) - nBlock;
+                int row = 0;
+                for (; row + 4 <= m; row += 4) {
+                    int res0 = res.indexOf(row, nBlock);
+                    int res1 = res0 + res.stride;
+                    int res2 = res1 + res.stride;
+                    int res3 = res2 + res.stride;
+                    for (int elem = kBlock; elem < kEnd; ++elem) {
+                        int base = mat1.indexOf(row, elem);
+                        float a0 = mat1.floatData[base];
+                        float a1 = mat1.floatData[base + mat1.stride];
+                        float a2 = mat1.floatData[base + 2 * mat1.stride];
+                        float a3 = mat1.floatData[base + 3 * mat1.stride];
+                        KERNELS.axpy4(a0, a1, a2, a3, weights, mat2.indexOf(elem, nBlock), res.floatData, res0, res1, res2, res3, num);
+                    }
+                }
+                for (; row < m; ++row) {
+                    int resBase = res.indexOf(row, nBlock);
+                    for (int elem = kBlock; elem < kEnd; ++elem) {
+                        KERNELS.axpy(mat1.floatData[mat1.indexOf(row, elem)], weights, mat2.indexOf(elem, nBlock), res.floatData, resBase, num);
+                    }
+                }
+            }
         }
-        return res;
     }
 
-    static double[][] add(double[][] mat1, double[][] mat2, int m, int n) {
-        double[][] res = new double[m][n];
-        for (int row = 0; row < m; ++row) {
-            for (int col = 0; col < n; ++col) {
-                res[row][col] = mat1[row][col] + mat2[row][col];
+    private static void gemmTransAKernel(Matrix mat1, Matrix mat2, Matrix res) {
+        int m = mat1.cols;
+        int k = mat1.rows;
+        int n = mat2.cols;
+        for (int kBlock = 0; kBlock < k; kBlock += BLOCK_K) {
+            int kEnd = Math.min(kBlock + BLOCK_K, k);
+            for (int nBlock = 0; nBlock < n; nBlock += BLOCK_N) {
+                int num = Math.min(nBlock + BLOCK_N, n) - nBlock;
+                int row = 0;
+                for (; row + 4 <= m; row += 4) {
+                    int res0 = res.indexOf(row, nBlock);
+                    int res1 = res0 + res.stride;
+                    int res2 = res1 + res.stride;
+                    int res3 = res2 + res.stride;
+                    for (int elem = kBlock; elem < kEnd; ++elem) {
+                        int base = mat1.indexOf(elem, row);
+                        double a0 = mat1.data[base];
+                        double a1 = mat1.data[base + 1];
+                        double a2 = mat1.data[base + 2];
+                        double a3 = mat1.data[base + 3];
+                        if (a0 == 0.0 && a1 == 0.0 && a2 == 0.0 && a3 == 0.0) {
+                            continue;
+                        }
+                        KERNELS.axpy4(a0, a1, a2, a3, mat2.data, mat2.indexOf(elem, nBlock), res.data, res0, res1, res2, res3, num);
+                    }
+                }
+                for (; row < m; ++row) {
+                    int resBase = res.indexOf(row, nBlock);
+                    for (int elem = kBlock; elem < kEnd; ++elem) {
+                        double scalar = mat1.data[mat1.indexOf(elem, row)];
+                        if (scalar == 0.0) {
+                            continue;
+                        }
+                        KERNELS.axpy(scalar, mat2.data, mat2.indexOf(elem, nBlock), res.data, resBase, num);
+                    }
+                }
             }
         }
-        return res;
     }
 
-    static double[] add(double[] vect1, double[] vect2) {
-        if (vect1.length != vect2.length) {
-            throw new IllegalArgumentException(String.format("Cannot add vectors of different sizes! (%d, %d)", vect1.length, vect2.length));
+    private static void gemvFloatKernel(float[] vect, int vectOffset, Matrix mat, float[] res, int resOffset) {
+        for (int row = 0; row < mat.rows; ++row) {
+            float scalar = vect[vectOffset + row];
+            if (scalar == 0.0f) {
+                continue;
+            }
+            KERNELS.axpy(scalar, mat.floatData, mat.indexOf(row, 0), res, resOffset, mat.cols);
         }
-        double[] res = new double[vect1.length];
-        for (int elem = 0; elem < vect1.length; ++elem) {
-            res[elem] = vect1[elem] + vect2[elem];
+    }
+
+    private static void gemvTransFloatKernel(Matrix mat, int rowStart, int rowEnd, float[] vect, int vectOffset, float[] res, int resOffset) {
+        int num = mat.cols;
+        int row = rowStart;
+        for (; row + 4 <= rowEnd; row += 4) {
+            int base = mat.indexOf(row, 0);
+            KERNELS.dot4(mat.floatData, base, base + mat.stride, base + 2 * mat.stride, base + 3 * mat.stride, vect, vectOffset, num, res, resOffset + row);
+        }
+        for (; row < rowEnd; ++row) {
+            res[resOffset + row] = KERNELS.dot(mat.floatData, mat.indexOf(row, 0), vect, vectOffset, num);
         }
-        return res;
     }
 
-    static double[] add(double[] vect, double[][] mat) {
-        double[] vectFromMat = makeVector(mat, mat.length, mat[0].length);
-        return add(vect, vectFromMat);
+    private static void rank1FloatKernel(float[] vectX, int xOffset, float[] vectY, int yOffset, Matrix mat) {
+        for (int row = 0; row < mat.rows; ++row) {
+            float scalar = vectX[xOffset + row];
+            if (scalar == 0.0f) {
+                continue;
+            }
+            KERNELS.axpy(scalar, vectY, yOffset, mat.floatData, mat.indexOf(row, 0), mat.cols);
+        }
     }
 
-    static double[] add(double[][] mat, double[] vect) {
-        double[] vectFromMat = makeVector(mat, mat.length, mat[0].length);
-        return add(vect, vectFromMat);
+    private static void gemmFloatKernel(Matrix mat1, Matrix mat2, Matrix res) {
+        int m = mat1.rows;
+        int k = mat1.cols;
+        int n = mat2.cols;
+        for (int kBlock = 0; kBlock < k; kBlock += BLOCK_K) {
+            int kEnd = Math.min(kBlock + BLOCK_K, k);
+            for (int nBlock = 0; nBlock < n; nBlock += BLOCK_N) {
+                int num = Math.min(nBlock + BLOCK_N, n) - nBlock;
+                int row = 0;
+                for (; row + 4 <= m; row += 4) {
+                    int res0 = res.indexOf(row, nBlock);
+                    int res1 = res0 + res.stride;
+                    int res2 = res1 + res.stride;
+                    int res3 = res2 + res.stride;
+                    for (int elem = kBlock; elem < kEnd; ++elem) {
+                        int base = mat1.indexOf(row, elem);
+                        float a0 = mat1.floatData[base];
+                        float a1 = mat1.floatData[base + mat1.stride];
+                        float a2 = mat1.floatData[base + 2 * mat1.stride];
+                        float a3 = mat1.floatData[base + 3 * mat1.stride];
+                        KERNELS.axpy4(a0, a1, a2, a3, mat2.floatData, mat2.indexOf(elem, nBlock), res.floatData, res0, res1, res2, res3, num);
+                    }
+                }
+                for (; row < m; ++row) {
+                    int resBase = res.indexOf(row, nBlock);
+                    for (int elem = kBlock; elem < kEnd; ++elem) {
+                        KERNELS.axpy(mat1.floatData[mat1.indexOf(row, elem)], mat2.floatData, mat2.indexOf(elem, nBlock), res.floatData, resBase, num);
+                    }
+                }
+            }
+        }
     }
 
-    static double[][] subtract(double[][] mat1, double[][] mat2, int m, int n) {
-        double[][] res = new double[m][n];
-        for (int row = 0; row < m; ++row) {
-            for (int col = 0; col < n; ++col) {
-                res[row][col] = mat1[row][col] - mat2[row][col];
+    private static void gemmTransAFloatKernel(Matrix mat1, Matrix mat2, Matrix res) {
+        int m = mat1.cols;
+        int k = mat1.rows;
+        int n = mat2.cols;
+        for (int kBlock = 0; kBlock < k; kBlock += BLOCK_K) {
+            int kEnd = Math.min(kBlock + BLOCK_K, k);
+            for (int nBlock = 0; nBlock < n; nBlock += BLOCK_N) {
+                int num = Math.min(nBlock + BLOCK_N, n) - nBlock;
+                int row = 0;
+                for (; row + 4 <= m; row += 4) {
+                    int res0 = res.indexOf(row, nBlock);
+                    int res1 = res0 + res.stride;
+                    int res2 = res1 + res.stride;
+                    int res3 = res2 + res.stride;
+                    for (int elem = kBlock; elem < kEnd; ++elem) {
+                        int base = mat1.indexOf(elem, row);
+                        float a0 = mat1.floatData[base];
+                        float a1 = mat1.floatData[base + 1];
+                        float a2 = mat1.floatData[base + 2];
+                        float a3 = mat1.floatData[base + 3];
+                        if (a0 == 0.0f && a1 == 0.0f && a2 == 0.0f && a3 == 0.0f) {
+                            continue;
+                        }
+                        KERNELS.axpy4(a0, a1, a2, a3, mat2.floatData, mat2.indexOf(elem, nBlock), res.floatData, res0, res1, res2, res3, num);
+                    }
+                }
+                for (; row < m; ++row) {
+                    int resBase = res.indexOf(row, nBlock);
+                    for (int elem = kBlock; elem < kEnd; ++elem) {
+                        float scalar = mat1.floatData[mat1.indexOf(elem, row)];
+                        if (scalar == 0.0f) {
+                            continue;
+                        }
+                        KERNELS.axpy(scalar, mat2.floatData, mat2.indexOf(elem, nBlock), res.floatData, resBase, num);
+                    }
+                }
             }
         }
-        return res;
     }
 
-    static double[] subtract(double[] vect1, double[] vect2) {
-        if (vect1.length != vect2.length) {
-            throw new IllegalArgumentException(String.format("Cannot add vectors of different sizes! (%d, %d)", vect1.length, vect2.length));
+    private static void initRows(Matrix mat, double[] bias) {
+        if (bias == null) {
+            fill(mat, 0.0);
+            return;
+        } else if (bias.length != mat.cols) {
+            throw new IllegalArgumentException(String.format("Cannot add vector (size:%d) to rows of matrix (%dx%d)\n", bias.length, mat.rows, mat.cols));
+        }
+        for (int row = 0; row < mat.rows; ++row) {
+            int base = mat.indexOf(row, 0);
+            if (mat.floatData != null) {
+                for (int col = 0; col < mat.cols; ++col) {
+                    mat.floatData[base + col] = (float) bias[col];
+                }
+            } else {
+                System.arraycopy(bias, 0, mat.data, base, mat.cols);
+            }
         }
-        double[] res = new double[vect1.length];
-        for (int elem = 0; elem < vect1.length; ++elem) {
-            res[elem] = vect1[elem] - vect2[elem];
+    }
+
+    static void sumRows(Matrix mat, double[] res) {
+        if (res.length != mat.cols) {
+            throw new IllegalArgumentException(String.format("Cannot sum rows of matrix (%dx%d) into vector (size:%d)\n", mat.rows, mat.cols, res.length));
         }
-        return res;
+        Arrays.fill(res, 0.0);
+        for (int row = 0; row < mat.rows; ++row) {
+            int base = mat.indexOf(row, 0);
+            if (mat.floatData != null) {
+                for (int col = 0; col < mat.cols; ++col) {
+                    res[col] += mat.floatData[base + col];
+                }
+            } else {
+                KERNELS.axpy(1.0, mat.data, base, res, 0, mat.cols);
+            }
+        }
+    }
+
+    static void axpy(double alpha, Matrix matX, Matrix matY) {
+        checkSameShape(matX, matY, "axpy");
+        boolean isFloat = checkSamePrecision(matX, matY, matY, "axpy");
+        float floatAlpha = (float) alpha;
+        for (int row = 0; row < matX.rows; ++row) {
+            int baseX = matX.indexOf(row, 0);
+            int baseY = matY.indexOf(row, 0);
+            if (isFloat) {
+                KERNELS.axpy(floatAlpha, matX.floatData, baseX, matY.floatData, baseY, matX.cols);
+            } else {
+                KERNELS.axpy(alpha, matX.data, baseX, matY.data, baseY, matX.cols);
+            }
+        }
+    }
+
+    static void fill(Matrix mat, double val) {
+        for (int row = 0; row < mat.rows; ++row) {
+            int base = mat.indexOf(row, 0);
+            if (mat.floatData != null) {
+                Arrays.fill(mat.floatData, base, base + mat.cols, (float) val);
+            } else {
+                Arrays.fill(mat.data, base, base + mat.cols, val);
+            }
+        }
+    }
+
+    private static boolean checkSamePrecision(Matrix mat1, Matrix mat2, Matrix res, String operation) {
+        if (mat1.isFloat() != mat2.isFloat() || mat1.isFloat() != res.isFloat()) {
+            throw new IllegalArgumentException(String.format("Cannot perform %s on matrices of mixed precision (%s, %s, %s)\n", operation, mat1.getPrecision(), mat2.getPrecision(), res.getPrecision()));
+        }
+        return mat1.isFloat();
+    }
+
+    private static void requireDouble(Matrix mat, String operation) {
+        if (mat.isFloat()) {
+            throw new IllegalArgumentException(String.format("Cannot perform %s on a FLOAT32 matrix (%dx%d)\n", operation, mat.rows, mat.cols));
+        }
+    }
+
+    private static void checkSameShape(Matrix mat1, Matrix mat2, String operation) {
+        if (mat1.rows != mat2.rows || mat1.cols != mat2.cols) {
+            throw new IllegalArgumentException(String.format("Cannot perform %s on matrices MAT1(%dx%d), MAT2(%dx%d)\n", operation, mat1.rows, mat1.cols, mat2.rows, mat2.cols));
+        }
+    }
+}
+
+class MappedMatrix {
+
+    private final int rows;
+    private final int cols;
+    private final Precision precision;
+    private final ByteBuffer buffer;
+
+    MappedMatrix(int rows, int cols, Precision precision, ByteBuffer buffer) {
+        int elemSize = precision == Precision.FLOAT32 ? Float.BYTES : Double.BYTES;
+        if ((long) rows * cols * elemSize > buffer.capacity()) {
+            throw new IllegalArgumentException(String.format("Cannot map a %dx%d %s matrix onto %d bytes", rows, cols, precision, buffer.capacity()));
+        }
+        this.rows = rows;
+        this.cols = cols;
+        this.precision = precision;
+        this.buffer = buffer;
+    }
+
+    int getRows() {
+        return rows;
+    }
+
+    int getCols() {
+        return cols;
+    }
+
+    Precision getPrecision() {
+        return precision;
+    }
+
+    ByteBuffer getBuffer() {
+        return buffer;
     }
 
-    static double[] subtract(double[] vect, double[][] mat) {
-        double[] vectFromMat = makeVector(mat, mat.length, mat[0].length);
-        return subtract(vect, vectFromMat);
+    int indexOf(int row, int col) {
+        return row * cols + col;
     }
 
-    static double[] subtract(double[][] mat, double[] vect) {
-        double[] vectFromMat = makeVector(mat, mat.length, mat[0].length);
-        return subtract(vect, vectFromMat);
+    double get(int row, int col) {
+        int index = indexOf(row, col);
+        return precision == Precision.FLOAT32 ? buffer.getFloat(index * Float.BYTES) : buffer.getDouble(index * Double.BYTES);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,130 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+class MicroBatcher implements AutoCloseable {
+
+    private final BlockingQueue<PendingPrediction> queue;
+    private final long windowNanos;
+    private final int maxBatch;
+    private final ServerMetrics metrics;
+    private final Thread worker;
+    private volatile InferenceEngine predictor;
+    private volatile boolean running = true;
+
+    MicroBatcher(InferenceEngine predictor, long windowNanos, int maxBatch, int maxQueued, ServerMetrics metrics) {
+        if (windowNanos < 0 || maxBatch < 1 || maxQueued < 1) {
+            throw new IllegalArgumentException(String.format("Cannot batch with a %d ns window, %d samples per batch and %d queued samples", windowNanos, maxBatch, maxQueued));
+        }
+        this.predictor = predictor;
+        this.windowNanos = windowNanos;
+        this.maxBatch = maxBatch;
+        this.queue = new LinkedBlockingQueue<>(maxQueued);
+        this.metrics = metrics;
+        this.worker = new Thread(this::run, "micro-batcher");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    InferenceEngine getPredictor() {
+        return predictor;
+    }
+
+    void setPredictor(InferenceEngine predictor) {
+        this.predictor = predictor;
+    }
+
+    int getQueueDepth() {
+        return queue.size();
+    }
+
+    CompletableFuture<double[]> submit(float[] sample) {
+        PendingPrediction pending = new PendingPrediction(sample);
+        if (!running) {
+            pending.future.completeExceptionally(new RejectedExecutionException("Inference server is shutting down"));
+        } else if (!queue.offer(pending)) {
+            pending.future.completeExceptionally(new RejectedExecutionException(String.format("Inference queue is full (%d samples)", queue.size())));
+        }
+        return pending.future;
+    }
+
+    private void run() {
+        List<PendingPrediction> batch = new ArrayList<>(maxBatch);
+        try {
+            while (running) {
+                PendingPrediction first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxBatch) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingPrediction next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                process(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        queue.drainTo(batch);
+        for (PendingPrediction pending : batch) {
+            pending.future.completeExceptionally(new RejectedExecutionException("Inference server is shutting down"));
+        }
+    }
+
+    private void process(List<PendingPrediction> batch) {
+        InferenceEngine current = predictor;
+        List<PendingPrediction> valid = new ArrayList<>(batch.size());
+        for (PendingPrediction pending : batch) {
+            if (pending.sample.length != current.getNumInputs()) {
+                pending.future.completeExceptionally(new IllegalArgumentException(String.format("Sample has %d features but the network takes %d inputs", pending.sample.length, current.getNumInputs())));
+            } else {
+                valid.add(pending);
+            }
+        }
+        if (valid.isEmpty()) {
+            return;
+        }
+        float[][] in = new float[valid.size()][];
+        for (int sample = 0; sample < in.length; ++sample) {
+            in[sample] = valid.get(sample).sample;
+        }
+        try {
+            double[][] probs = current.predictProbabilitiesBatch(in);
+            for (int sample = 0; sample < in.length; ++sample) {
+                valid.get(sample).future.complete(probs[sample]);
+            }
+            metrics.recordBatch(in.length);
+        } catch (RuntimeException e) {
+            for (PendingPrediction pending : valid) {
+                pending.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        worker.interrupt();
+    }
+}
+
+class PendingPrediction {
+
+    final float[] sample;
+    final CompletableFuture<double[]> future = new CompletableFuture<>();
+
+    PendingPrediction(float[] sample) {
+        this.sample = sample;
+    }
+}
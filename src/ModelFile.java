@@ -0,0 +1,487 @@
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+class ModelFile {
+
+    static final int MAGIC = 0x464D4E4E;
+    static final int VERSION = 3;
+    static final int MIN_VERSION = 1;
+    static final int PREFIX_SIZE = 12;
+    static final int BLOCK_ALIGNMENT = 64;
+
+    static boolean isModelFile(File file) throws IOException {
+        if (!file.isFile() || file.length() < PREFIX_SIZE) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer prefix = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(prefix, 0);
+            return prefix.getInt(0) == MAGIC;
+        }
+    }
+
+    static Network load(String fileName) {
+        File file = new File(fileName);
+        try {
+            if (!isModelFile(file)) {
+                Object obj = SerializationUtils.deserialize(fileName);
+                if (obj != null && !(obj instanceof Network)) {
+                    System.out.printf("%s does not hold a network!\n", fileName);
+                    return null;
+                }
+                return (Network) obj;
+            }
+            return read(file);
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.printf("Error in reading from file! (%s)\n", e.getMessage());
+            return null;
+        }
+    }
+
+    static boolean save(Network network, String fileName) {
+        try {
+            write(network, new File(fileName));
+            System.out.println("Done! Saved to the file.");
+            return true;
+        } catch (IOException e) {
+            System.out.printf("Error writing to file! (%s)\n", e.getMessage());
+            return false;
+        }
+    }
+
+    static void write(Network network, File file) throws IOException {
+        Layer[] layers = network.getLayers();
+        Precision precision = network.getPrecision();
+        int elemSize = precision == Precision.FLOAT32 ? Float.BYTES : Double.BYTES;
+        Optimizer optimizer = network.getOptimizer();
+        double[][] firstMoments = getMoments(optimizer.getFirstMoments(), layers);
+        double[][] secondMoments = getMoments(optimizer.getSecondMoments(), layers);
+        long[] weightOffsets = new long[layers.length];
+        long[] biasOffsets = new long[layers.length];
+        long[] firstOffsets = new long[layers.length];
+        long[] secondOffsets = new long[layers.length];
+        int metadataSize = writeMetadata(network, weightOffsets, biasOffsets, firstOffsets, secondOffsets).remaining();
+        long offset = align(metadataSize);
+        for (int layer = 0; layer < layers.length; ++layer) {
+            weightOffsets[layer] = offset;
+            offset = align(offset + (long) layers[layer].getNumWeights() * layers[layer].getNumNeurons() * elemSize);
+            biasOffsets[layer] = offset;
+            offset = align(offset + (long) layers[layer].getNumNeurons() * Double.BYTES);
+            if (firstMoments[layer] != null) {
+                firstOffsets[layer] = offset;
+                offset = align(offset + (long) firstMoments[layer].length * Double.BYTES);
+            }
+            if (secondMoments[layer] != null) {
+                secondOffsets[layer] = offset;
+                offset = align(offset + (long) secondMoments[layer].length * Double.BYTES);
+            }
+        }
+
+        File tempFile = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, writeMetadata(network, weightOffsets, biasOffsets, firstOffsets, secondOffsets), 0);
+            for (int layer = 0; layer < layers.length; ++layer) {
+                Matrix W = layers[layer].getW();
+                ByteBuffer weights = ByteBuffer.allocate(W.getRows() * W.getCols() * elemSize).order(ByteOrder.LITTLE_ENDIAN);
+                if (W.isFloat()) {
+                    weights.asFloatBuffer().put(W.getFloatData(), 0, W.getRows() * W.getCols());
+                } else {
+                    weights.asDoubleBuffer().put(W.getData(), 0, W.getRows() * W.getCols());
+                }
+                writeFully(channel, weights, weightOffsets[layer]);
+                ByteBuffer biases = ByteBuffer.allocate(layers[layer].getNumNeurons() * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                biases.asDoubleBuffer().put(layers[layer].getB());
+                writeFully(channel, biases, biasOffsets[layer]);
+                writeDoubles(channel, firstMoments[layer], firstOffsets[layer]);
+                writeDoubles(channel, secondMoments[layer], secondOffsets[layer]);
+            }
+            channel.force(true);
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static double[][] getMoments(double[][] moments, Layer[] layers) {
+        double[][] res = new double[layers.length][];
+        for (int layer = 0; moments != null && layer < Math.min(moments.length, layers.length); ++layer) {
+            if (moments[layer] != null && moments[layer].length == Optimizer.getStateSize(layers[layer])) {
+                res[layer] = moments[layer];
+            }
+        }
+        return res;
+    }
+
+    private static void writeDoubles(FileChannel channel, double[] vals, long position) throws IOException {
+        if (vals != null) {
+            ByteBuffer buffer = ByteBuffer.allocate(vals.length * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.asDoubleBuffer().put(vals);
+            writeFully(channel, buffer, position);
+        }
+    }
+
+    private static ByteBuffer writeMetadata(Network network, long[] weightOffsets, long[] biasOffsets, long[] firstOffsets, long[] secondOffsets) throws IOException {
+        Layer[] layers = network.getLayers();
+        ActivFunc[] activFuncs = network.getActivFuncTypes();
+        Scaler scaler = network.getScaler();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        LittleEndianWriter out = new LittleEndianWriter(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(0);
+        out.writeInt(layers.length);
+        out.writeString(network.getLossType().name());
+        out.writeString(network.getPrecision().name());
+        out.writeString(network.getDatasetFile() == null ? "" : network.getDatasetFile().getPath());
+        out.writeString(scaler.getScaleMethodType());
+        out.writeDouble(scaler.getMean());
+        out.writeDouble(scaler.getStd());
+        out.writeDouble(scaler.getScaleFactor());
+        double[] means = scaler instanceof FeatureStandardizer ? ((FeatureStandardizer) scaler).getMeans() : new double[0];
+        double[] stds = scaler instanceof FeatureStandardizer ? ((FeatureStandardizer) scaler).getStds() : new double[0];
+        out.writeInt(means.length);
+        out.writeDoubles(means);
+        out.writeDoubles(stds);
+        for (int layer = 0; layer < layers.length; ++layer) {
+            out.writeInt(layers[layer].getNumNeurons());
+            out.writeInt(layers[layer].getNumWeights());
+            out.writeDouble(layers[layer].getLearnRate());
+            out.writeString(activFuncs[layer].name());
+            out.writeLong(weightOffsets[layer]);
+            out.writeLong(biasOffsets[layer]);
+        }
+        Optimizer optimizer = network.getOptimizer();
+        out.writeString(optimizer.getType().name());
+        out.writeDouble(optimizer.getBeta1());
+        out.writeDouble(optimizer.getBeta2());
+        out.writeDouble(optimizer.getEpsilon());
+        out.writeDouble(optimizer.getWeightDecay());
+        out.writeDouble(optimizer.getClipNorm());
+        out.writeString(optimizer.getSchedule().name());
+        out.writeInt(optimizer.getScheduleEpochs());
+        out.writeDouble(optimizer.getGamma());
+        out.writeLong(optimizer.getStep());
+        out.writeInt(optimizer.getEpoch());
+        for (int layer = 0; layer < layers.length; ++layer) {
+            out.writeLong(firstOffsets[layer]);
+            out.writeLong(secondOffsets[layer]);
+        }
+        TrainingState state = network.getTrainingState();
+        out.writeInt(state == null ? 0 : 1);
+        if (state != null) {
+            out.writeInt(state.epoch);
+            out.writeInt(state.endEpoch);
+            out.writeInt(state.batchInEpoch);
+            out.writeInt(state.batchSize);
+            out.writeInt(state.order.length);
+            out.writeInts(state.order);
+            out.writeLong(state.randState);
+        }
+        ByteBuffer metadata = ByteBuffer.wrap(bytes.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+        metadata.putInt(8, metadata.remaining());
+        return metadata;
+    }
+
+    static Network read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ModelHeader header = readHeader(channel, file);
+            int numLayers = header.activFuncs.length;
+            Layer[] layers = new Layer[numLayers];
+            for (int layer = 0; layer < numLayers; ++layer) {
+                int numNeurons = header.numNeurons[layer];
+                int numWeights = header.numWeights[layer];
+                Matrix W = readWeights(channel, header.weightOffsets[layer], numWeights, numNeurons, header.precision, file);
+                layers[layer] = new Layer(numNeurons, numWeights, W, readBiases(channel, header.biasOffsets[layer], numNeurons, file), header.learnRates[layer]);
+            }
+            Network network = new Network(numLayers, layers, header.lossType, header.activFuncs, header.datasetFile, header.scaler, header.precision);
+            if (header.optimizer != null) {
+                double[][] firstMoments = new double[numLayers][];
+                double[][] secondMoments = new double[numLayers][];
+                for (int layer = 0; layer < numLayers; ++layer) {
+                    firstMoments[layer] = readMoments(channel, header.firstOffsets[layer], layers[layer], file);
+                    secondMoments[layer] = readMoments(channel, header.secondOffsets[layer], layers[layer], file);
+                }
+                header.optimizer.restoreState(header.step, header.epoch, firstMoments, secondMoments);
+                network.setOptimizer(header.optimizer);
+            }
+            network.setTrainingState(header.trainingState);
+            return network;
+        }
+    }
+
+    static Predictor map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ModelHeader header = readHeader(channel, file);
+            int numLayers = header.activFuncs.length;
+            int elemSize = header.precision == Precision.FLOAT32 ? Float.BYTES : Double.BYTES;
+            MappedMatrix[] weights = new MappedMatrix[numLayers];
+            double[][] biases = new double[numLayers][];
+            for (int layer = 0; layer < numLayers; ++layer) {
+                int numNeurons = header.numNeurons[layer];
+                int numWeights = header.numWeights[layer];
+                long length = (long) numWeights * numNeurons * elemSize;
+                if (length > Integer.MAX_VALUE) {
+                    throw new IOException(String.format("Layer %d of %s is too large to map (%d bytes)", layer + 1, file, length));
+                }
+                weights[layer] = new MappedMatrix(numWeights, numNeurons, header.precision, readBlock(channel, header.weightOffsets[layer], length, file));
+                biases[layer] = readBiases(channel, header.biasOffsets[layer], numNeurons, file);
+            }
+            return new Predictor(weights, biases, header.activFuncs, header.scaler);
+        }
+    }
+
+    private static ModelHeader readHeader(FileChannel channel, File file) throws IOException {
+        if (channel.size() < PREFIX_SIZE) {
+            throw new IOException(String.format("%s is not a model file!", file));
+        }
+        ByteBuffer prefix = channel.map(FileChannel.MapMode.READ_ONLY, 0, PREFIX_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        if (prefix.getInt() != MAGIC) {
+            throw new IOException(String.format("%s is not a model file!", file));
+        }
+        int version = prefix.getInt();
+        if (version < MIN_VERSION || version > VERSION) {
+            throw new IOException(String.format("Model file version %d not supported! (expected %d to %d)", version, MIN_VERSION, VERSION));
+        }
+        int metadataSize = prefix.getInt();
+        if (metadataSize < PREFIX_SIZE || metadataSize > channel.size()) {
+            throw new IOException(String.format("Model file %s is truncated/corrupt! (metadata of %d bytes, file size %d)", file, metadataSize, channel.size()));
+        }
+        ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, metadataSize).order(ByteOrder.LITTLE_ENDIAN);
+        in.position(PREFIX_SIZE);
+        try {
+            int numLayers = in.getInt();
+            if (numLayers < 1 || (long) numLayers * 32 > in.remaining()) {
+                throw new IOException(String.format("Model file %s has %d layers!", file, numLayers));
+            }
+            ModelHeader header = new ModelHeader(numLayers);
+            header.lossType = Loss.valueOf(readString(in));
+            header.precision = Precision.valueOf(readString(in));
+            header.datasetFile = new File(readString(in));
+            String scaleMethodType = readString(in);
+            double mean = in.getDouble();
+            double std = in.getDouble();
+            double scaleFactor = in.getDouble();
+            double[] means = new double[readCount(in, Double.BYTES)];
+            in.asDoubleBuffer().get(means);
+            in.position(in.position() + means.length * Double.BYTES);
+            double[] stds = new double[means.length];
+            in.asDoubleBuffer().get(stds);
+            in.position(in.position() + stds.length * Double.BYTES);
+            header.scaler = createScaler(scaleMethodType, mean, std, scaleFactor, means, stds);
+            for (int layer = 0; layer < numLayers; ++layer) {
+                header.numNeurons[layer] = in.getInt();
+                header.numWeights[layer] = in.getInt();
+                header.learnRates[layer] = in.getDouble();
+                header.activFuncs[layer] = ActivFunc.valueOf(readString(in));
+                header.weightOffsets[layer] = in.getLong();
+                header.biasOffsets[layer] = in.getLong();
+                if (header.numNeurons[layer] < 1 || header.numWeights[layer] < 1 || (layer > 0 && header.numWeights[layer] != header.numNeurons[layer - 1])) {
+                    throw new IOException(String.format("Model file %s has an invalid layer %d (%d -> %d)", file, layer + 1, header.numWeights[layer], header.numNeurons[layer]));
+                }
+            }
+            if (version >= 2) {
+                OptimizerType type = OptimizerType.valueOf(readString(in));
+                double beta1 = in.getDouble();
+                double beta2 = in.getDouble();
+                double epsilon = in.getDouble();
+                double weightDecay = in.getDouble();
+                double clipNorm = in.getDouble();
+                LearnRateSchedule schedule = LearnRateSchedule.valueOf(readString(in));
+                int scheduleEpochs = in.getInt();
+                double gamma = in.getDouble();
+                header.optimizer = new Optimizer(type, beta1, beta2, epsilon, weightDecay, clipNorm, schedule, scheduleEpochs, gamma);
+                header.step = in.getLong();
+                header.epoch = in.getInt();
+                for (int layer = 0; layer < numLayers; ++layer) {
+                    header.firstOffsets[layer] = in.getLong();
+                    header.secondOffsets[layer] = in.getLong();
+                }
+            }
+            if (version >= 3 && in.getInt() != 0) {
+                header.trainingState = readTrainingState(in, file);
+            }
+            return header;
+        } catch (BufferUnderflowException e) {
+            throw new IOException(String.format("Model file %s is truncated/corrupt! (metadata of %d bytes)", file, metadataSize));
+        }
+    }
+
+    private static TrainingState readTrainingState(ByteBuffer in, File file) throws IOException {
+        int epoch = in.getInt();
+        int endEpoch = in.getInt();
+        int batchInEpoch = in.getInt();
+        int batchSize = in.getInt();
+        int[] order = new int[readCount(in, Integer.BYTES)];
+        in.asIntBuffer().get(order);
+        in.position(in.position() + order.length * Integer.BYTES);
+        long randState = in.getLong();
+        if (epoch < 0 || epoch > endEpoch || batchInEpoch < 0 || batchSize < 1 || order.length == 0 || randState < 0 || randState > ResumableRandom.MASK) {
+            throw new IOException(String.format("Model file %s has an invalid training state (epoch %d of %d, batch %d of size %d)", file, epoch, endEpoch, batchInEpoch, batchSize));
+        }
+        return new TrainingState(epoch, endEpoch, batchInEpoch, batchSize, order, randState);
+    }
+
+    private static double[] readMoments(FileChannel channel, long offset, Layer layer, File file) throws IOException {
+        if (offset == 0) {
+            return null;
+        }
+        double[] moments = new double[Optimizer.getStateSize(layer)];
+        readBlock(channel, offset, (long) moments.length * Double.BYTES, file).asDoubleBuffer().get(moments);
+        return moments;
+    }
+
+    private static double[] readBiases(FileChannel channel, long offset, int numNeurons, File file) throws IOException {
+        double[] B = new double[numNeurons];
+        readBlock(channel, offset, (long) numNeurons * Double.BYTES, file).asDoubleBuffer().get(B);
+        return B;
+    }
+
+    private static Matrix readWeights(FileChannel channel, long offset, int rows, int cols, Precision precision, File file) throws IOException {
+        if (precision == Precision.FLOAT32) {
+            ByteBuffer block = readBlock(channel, offset, (long) rows * cols * Float.BYTES, file);
+            float[] data = new float[rows * cols];
+            block.asFloatBuffer().get(data);
+            return new Matrix(rows, cols, data);
+        }
+        ByteBuffer block = readBlock(channel, offset, (long) rows * cols * Double.BYTES, file);
+        double[] data = new double[rows * cols];
+        block.asDoubleBuffer().get(data);
+        return new Matrix(rows, cols, data);
+    }
+
+    private static ByteBuffer readBlock(FileChannel channel, long offset, long length, File file) throws IOException {
+        if (offset < 0 || offset + length > channel.size()) {
+            throw new IOException(String.format("Model file %s is truncated/corrupt! (block of %d bytes at %d, file size %d)", file, length, offset, channel.size()));
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static Scaler createScaler(String scaleMethodType, double mean, double std, double scaleFactor, double[] means, double[] stds) throws IOException {
+        switch (scaleMethodType) {
+            case "identity":
+                return new Identity();
+            case "normalize":
+                return new Normalizer(scaleFactor);
+            case "standardize":
+                return new Standardizer(mean, std);
+            case "centralize":
+                return new Centralizer(mean);
+            case "standardize_features":
+                return new FeatureStandardizer(means, stds, mean, std);
+            default:
+                throw new IOException(String.format("Unknown scaling method %s", scaleMethodType));
+        }
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[readCount(in, 1)];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int readCount(ByteBuffer in, int elemSize) {
+        int count = in.getInt();
+        if (count < 0 || (long) count * elemSize > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        return count;
+    }
+
+    private static long align(long offset) {
+        return (offset + BLOCK_ALIGNMENT - 1) / BLOCK_ALIGNMENT * BLOCK_ALIGNMENT;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    static boolean convert(String serPath, String modelPath) {
+        Object obj = SerializationUtils.deserialize(serPath);
+        if (!(obj instanceof Network)) {
+            System.out.printf("Could not load a network from %s\n", serPath);
+            return false;
+        }
+        return save((Network) obj, modelPath);
+    }
+}
+
+class LittleEndianWriter {
+
+    private final ByteBuffer scratch = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private final OutputStream out;
+
+    LittleEndianWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    void writeInt(int val) throws IOException {
+        scratch.clear();
+        out.write(scratch.putInt(val).array(), 0, Integer.BYTES);
+    }
+
+    void writeLong(long val) throws IOException {
+        scratch.clear();
+        out.write(scratch.putLong(val).array(), 0, Long.BYTES);
+    }
+
+    void writeDouble(double val) throws IOException {
+        scratch.clear();
+        out.write(scratch.putDouble(val).array(), 0, Double.BYTES);
+    }
+
+    void writeDoubles(double[] vals) throws IOException {
+        for (double val : vals) {
+            writeDouble(val);
+        }
+    }
+
+    void writeInts(int[] vals) throws IOException {
+        for (int val : vals) {
+            writeInt(val);
+        }
+    }
+
+    void writeString(String val) throws IOException {
+        byte[] bytes = val.getBytes(StandardCharsets.UTF_8);
+        writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
+
+class ModelHeader {
+
+    Loss lossType;
+    Precision precision;
+    File datasetFile;
+    Scaler scaler;
+    final int[] numNeurons;
+    final int[] numWeights;
+    final double[] learnRates;
+    final ActivFunc[] activFuncs;
+    final long[] weightOffsets;
+    final long[] biasOffsets;
+    Optimizer optimizer;
+    long step;
+    int epoch;
+    final long[] firstOffsets;
+    final long[] secondOffsets;
+    TrainingState trainingState;
+
+    ModelHeader(int numLayers) {
+        this.numNeurons = new int[numLayers];
+        this.numWeights = new int[numLayers];
+        this.learnRates = new double[numLayers];
+        this.activFuncs = new ActivFunc[numLayers];
+        this.weightOffsets = new long[numLayers];
+        this.biasOffsets = new long[numLayers];
+        this.firstOffsets = new long[numLayers];
+        this.secondOffsets = new long[numLayers];
+    }
+}
@@ -1,22 +1,46 @@
 import java.io.*;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.*;
 
 enum Loss {
     MSE,
     CROSS_ENTROPY;
 
+    static final double MIN_PROB = 1e-12;
+    private static final Kernels KERNELS = Kernels.INSTANCE;
+
     static double getLossOf(Loss loss, double[] actual, double[] pred) {
+        return getLossOf(loss, actual, 0, pred, 0, actual.length);
+    }
+
+    static double getLossOf(Loss loss, Matrix actual, Matrix pred) {
+        double res = 0.0;
+        for (int row = 0; row < actual.getRows(); ++row) {
+            if (pred.isFloat()) {
+                res += getLossOf(loss, actual.getFloatData(), actual.indexOf(row, 0), pred.getFloatData(), pred.indexOf(row, 0), actual.getCols());
+            } else {
+                res += getLossOf(loss, actual.getData(), actual.indexOf(row, 0), pred.getData(), pred.indexOf(row, 0), actual.getCols());
+            }
+        }
+        return res / actual.getRows();
+    }
+
+    private static double getLossOf(Loss loss, double[] actual, int actualOffset, double[] pred, int predOffset, int numNeurons) {
         double res = 0.0;
         switch(loss) {
             case MSE:
-                for (int elem = 0; elem < actual.length; ++elem) {
-                    res += Math.pow(pred[elem] - actual[elem], 2);
+                for (int elem = 0; elem < numNeurons; ++elem) {
+                    res += Math.pow(pred[predOffset + elem] - actual[actualOffset + elem], 2);
                 }
                 return res;
             case CROSS_ENTROPY:
-                for (int elem = 0; elem < actual.length; ++elem) {
-                    res += actual[elem] * Math.log10(pred[elem]);
+                for (int elem = 0; elem < numNeurons; ++elem) {
+                    res += actual[actualOffset + elem] * Math.log10(Math.max(pred[predOffset + elem], MIN_PROB));
                 }
                 res = -1 * res;
                 return res;
@@ -25,25 +49,134 @@ enum Loss {
         }
     }
 
-    static double[] getDerivLossOf(Loss loss, double[] actual, double[] pred) {
-        int numNeurons = actual.length;
-        double[] res = new double[numNeurons];
+    private static double getLossOf(Loss loss, float[] actual, int actualOffset, float[] pred, int predOffset, int numNeurons) {
+        double res = 0.0;
         switch(loss) {
             case MSE:
-                for (int elem  = 0; elem < numNeurons; ++elem) {
-                    res[elem] = 2 * (pred[elem] - actual[elem]);
+                for (int elem = 0; elem < numNeurons; ++elem) {
+                    double diff = pred[predOffset + elem] - actual[actualOffset + elem];
+                    res += diff * diff;
                 }
                 return res;
             case CROSS_ENTROPY:
-                double constant = Math.log10(Math.E);
                 for (int elem = 0; elem < numNeurons; ++elem) {
-                    res[elem] = (pred[elem] - actual[elem]) * constant;//(-1) * actual[elem] * (1.0 / pred[elem]) * constant;
+                    res += actual[actualOffset + elem] * Math.log10(Math.max(pred[predOffset + elem], MIN_PROB));
                 }
+                res = -1 * res;
                 return res;
             default:
                 throw new IllegalArgumentException(String.format("Loss function does not exist / not yet supported!. Please try %s", values().toString()));
         }
     }
+
+    static double[] getDerivLossOf(Loss loss, double[] actual, double[] pred) {
+        double[] res = new double[actual.length];
+        getDerivLossOf(loss, actual, pred, res);
+        return res;
+    }
+
+    static void getDerivLossOf(Loss loss, double[] actual, double[] pred, double[] res) {
+        getDerivLossOf(loss, actual, 0, pred, 0, res, 0, actual.length, 1.0);
+    }
+
+    static void getDerivLossOf(Loss loss, Matrix actual, Matrix pred, Matrix res) {
+        getDerivLossOf(loss, actual, pred, res, 1.0 / actual.getRows());
+    }
+
+    static void getDerivLossOf(Loss loss, Matrix actual, Matrix pred, Matrix res, double scale) {
+        for (int row = 0; row < actual.getRows(); ++row) {
+            if (res.isFloat()) {
+                getDerivLossOf(loss, actual.getFloatData(), actual.indexOf(row, 0), pred.getFloatData(), pred.indexOf(row, 0), res.getFloatData(), res.indexOf(row, 0), actual.getCols(), (float) scale);
+            } else {
+                getDerivLossOf(loss, actual.getData(), actual.indexOf(row, 0), pred.getData(), pred.indexOf(row, 0), res.getData(), res.indexOf(row, 0), actual.getCols(), scale);
+            }
+        }
+    }
+
+    private static void getDerivLossOf(Loss loss, double[] actual, int actualOffset, double[] pred, int predOffset, double[] res, int resOffset, int numNeurons, double scale) {
+        switch(loss) {
+            case MSE:
+                for (int elem  = 0; elem < numNeurons; ++elem) {
+                    res[resOffset + elem] = scale * 2 * (pred[predOffset + elem] - actual[actualOffset + elem]);
+                }
+                return;
+            case CROSS_ENTROPY:
+                double constant = scale * Math.log10(Math.E);
+                for (int elem = 0; elem < numNeurons; ++elem) {
+                    res[resOffset + elem] = (-1) * actual[actualOffset + elem] * (1.0 / Math.max(pred[predOffset + elem], MIN_PROB)) * constant;
+                }
+                return;
+            default:
+                throw new IllegalArgumentException(String.format("Loss function does not exist / not yet supported!. Please try %s", values().toString()));
+        }
+    }
+
+    private static void getDerivLossOf(Loss loss, float[] actual, int actualOffset, float[] pred, int predOffset, float[] res, int resOffset, int numNeurons, float scale) {
+        switch(loss) {
+            case MSE:
+                for (int elem  = 0; elem < numNeurons; ++elem) {
+                    res[resOffset + elem] = scale * 2 * (pred[predOffset + elem] - actual[actualOffset + elem]);
+                }
+                return;
+            case CROSS_ENTROPY:
+                float constant = scale * (float) Math.log10(Math.E);
+                for (int elem = 0; elem < numNeurons; ++elem) {
+                    res[resOffset + elem] = (-1) * actual[actualOffset + elem] * (1.0f / Math.max(pred[predOffset + elem], (float) MIN_PROB)) * constant;
+                }
+                return;
+            default:
+                throw new IllegalArgumentException(String.format("Loss function does not exist / not yet supported!. Please try %s", values().toString()));
+        }
+    }
+
+    static boolean hasSoftmaxHead(Loss loss, ActivFunc outActivFunc) {
+        return loss == CROSS_ENTROPY && outActivFunc == ActivFunc.SOFTMAX;
+    }
+
+    static double getSoftmaxCrossEntropyOf(Matrix actual, Matrix logits, Matrix res, double scale) {
+        double loss = 0.0;
+        for (int row = 0; row < actual.getRows(); ++row) {
+            if (res.isFloat()) {
+                loss += getSoftmaxCrossEntropyOf(actual.getFloatData(), actual.indexOf(row, 0), logits.getFloatData(), logits.indexOf(row, 0), res.getFloatData(), res.indexOf(row, 0), actual.getCols(), (float) scale);
+            } else {
+                loss += getSoftmaxCrossEntropyOf(actual.getData(), actual.indexOf(row, 0), logits.getData(), logits.indexOf(row, 0), res.getData(), res.indexOf(row, 0), actual.getCols(), scale);
+            }
+        }
+        return loss / actual.getRows();
+    }
+
+    private static double getSoftmaxCrossEntropyOf(double[] actual, int actualOffset, double[] logits, int logitsOffset, double[] res, int resOffset, int numNeurons, double scale) {
+        double max = ActivFunc.getMaxOf(logits, logitsOffset, numNeurons);
+        double sumElems = KERNELS.expSum(logits, logitsOffset, max, res, resOffset, numNeurons);
+        double logSum = max + Math.log(sumElems);
+        double invSum = 1.0 / sumElems;
+        double constant = scale * Math.log10(Math.E);
+        double loss = 0.0;
+        for (int elem = 0; elem < numNeurons; ++elem) {
+            loss += actual[actualOffset + elem] * (logits[logitsOffset + elem] - logSum);
+            res[resOffset + elem] = (res[resOffset + elem] * invSum - actual[actualOffset + elem]) * constant;
+        }
+        return -1 * loss * Math.log10(Math.E);
+    }
+
+    private static double getSoftmaxCrossEntropyOf(float[] actual, int actualOffset, float[] logits, int logitsOffset, float[] res, int resOffset, int numNeurons, float scale) {
+        float max = ActivFunc.getMaxOf(logits, logitsOffset, numNeurons);
+        double sumElems = KERNELS.expSum(logits, logitsOffset, max, res, resOffset, numNeurons);
+        double logSum = max + Math.log(sumElems);
+        float invSum = (float) (1.0 / sumElems);
+        float constant = scale * (float) Math.log10(Math.E);
+        double loss = 0.0;
+        for (int elem = 0; elem < numNeurons; ++elem) {
+            loss += actual[actualOffset + elem] * (logits[logitsOffset + elem] - logSum);
+            res[resOffset + elem] = (res[resOffset + elem] * invSum - actual[actualOffset + elem]) * constant;
+        }
+        return -1 * loss * Math.log10(Math.E);
+    }
+}
+
+enum TrainingMode {
+    SYNCHRONOUS,
+    HOGWILD
 }
 
 enum ActivFunc {
@@ -52,81 +185,157 @@ enum ActivFunc {
     RELU,
     LEAKY_RELU;
 
+    private static final Kernels KERNELS = Kernels.INSTANCE;
+
     static double[] getActivFuncOf(ActivFunc activFunc, double[] in) {
-        int numElems = in.length;
-        double[] res = new double[numElems];
+        double[] res = new double[in.length];
+        getActivFuncOf(activFunc, in, res);
+        return res;
+    }
+
+    static void getActivFuncOf(ActivFunc activFunc, double[] in, double[] res) {
+        getActivFuncOf(activFunc, in, 0, res, 0, in.length);
+    }
+
+    static void getActivFuncOf(ActivFunc activFunc, Matrix in, Matrix res) {
+        for (int row = 0; row < in.getRows(); ++row) {
+            if (res.isFloat()) {
+                getActivFuncOf(activFunc, in.getFloatData(), in.indexOf(row, 0), res.getFloatData(), res.indexOf(row, 0), in.getCols());
+            } else {
+                getActivFuncOf(activFunc, in.getData(), in.indexOf(row, 0), res.getData(), res.indexOf(row, 0), in.getCols());
+            }
+        }
+    }
+
+    private static void getActivFuncOf(ActivFunc activFunc, double[] in, int inOffset, double[] res, int resOffset, int numElems) {
         switch(activFunc) {
             case SIGMOID:
-                for (int elem = 0; elem < numElems; ++elem) {
-                    res[elem] = 1.0 / (1 + Math.exp(-in[elem]));
-                }
-                return res;
+                KERNELS.sigmoid(in, inOffset, res, resOffset, numElems);
+                return;
             case SOFTMAX:
-                double maxElem = getMaxOf(in);
-                //double[] shiftedIn = new double[numElems];
-                double[] expShiftedIn = new double[numElems];
-                double sumElems = 0.0;
+                double sumElems = KERNELS.expSum(in, inOffset, getMaxOf(in, inOffset, numElems), res, resOffset, numElems);
+                KERNELS.scale(1.0 / sumElems, res, resOffset, res, resOffset, numElems);
+                return;
+            case LEAKY_RELU:
                 for (int elem = 0; elem < numElems; ++elem) {
-                    //shiftedIn[elem] = in[elem] - maxElem;
-                    expShiftedIn[elem] = Math.exp(in[elem] - maxElem);
-                    sumElems += expShiftedIn[elem];
+                    res[resOffset + elem] = in[inOffset + elem] > 0.0 ? in[inOffset + elem] : (0.01 * in[inOffset + elem]);
                 }
+                return;
+            case RELU:
                 for (int elem = 0; elem < numElems; ++elem) {
-                    res[elem] = expShiftedIn[elem] / sumElems;
+                    res[resOffset + elem] = in[inOffset + elem] > 0.0 ? in[inOffset + elem] : 0.0;
                 }
-                return res;
+                return;
+            default:
+                throw new IllegalArgumentException(String.format("Loss function does not exist / not yet supported!. Please try %s", values().toString()));
+        }
+    }
+
+    private static void getActivFuncOf(ActivFunc activFunc, float[] in, int inOffset, float[] res, int resOffset, int numElems) {
+        switch(activFunc) {
+            case SIGMOID:
+                KERNELS.sigmoid(in, inOffset, res, resOffset, numElems);
+                return;
+            case SOFTMAX:
+                double sumElems = KERNELS.expSum(in, inOffset, getMaxOf(in, inOffset, numElems), res, resOffset, numElems);
+                KERNELS.scale((float) (1.0 / sumElems), res, resOffset, res, resOffset, numElems);
+                return;
             case LEAKY_RELU:
                 for (int elem = 0; elem < numElems; ++elem) {
-                    res[elem] = in[elem] > 0.0 ? in[elem] : (0.01 * in[elem]);
+                    res[resOffset + elem] = in[inOffset + elem] > 0.0f ? in[inOffset + elem] : (0.01f * in[inOffset + elem]);
                 }
-                return res;
+                return;
             case RELU:
                 for (int elem = 0; elem < numElems; ++elem) {
-                    res[elem] = in[elem] > 0.0 ? in[elem] : 0.0;
+                    res[resOffset + elem] = in[inOffset + elem] > 0.0f ? in[inOffset + elem] : 0.0f;
                 }
-                return res;
+                return;
             default:
                 throw new IllegalArgumentException(String.format("Loss function does not exist / not yet supported!. Please try %s", values().toString()));
         }
     }
 
-    static double[] getDerivActivFuncOf(ActivFunc activFunc, double[] in) {
-        int numElems = in.length;
-        double[] res = new double[numElems];
-        double[] funcOut;
+    static void backpropagate(ActivFunc activFunc, Matrix out, Matrix grad, Matrix res) {
+        for (int row = 0; row < out.getRows(); ++row) {
+            if (res.isFloat()) {
+                backpropagate(activFunc, out.getFloatData(), out.indexOf(row, 0), grad.getFloatData(), grad.indexOf(row, 0), res.getFloatData(), res.indexOf(row, 0), out.getCols());
+            } else {
+                backpropagate(activFunc, out.getData(), out.indexOf(row, 0), grad.getData(), grad.indexOf(row, 0), res.getData(), res.indexOf(row, 0), out.getCols());
+            }
+        }
+    }
+
+    private static void backpropagate(ActivFunc activFunc, double[] out, int outOffset, double[] grad, int gradOffset, double[] res, int resOffset, int numElems) {
         switch(activFunc) {
             case SIGMOID:
-                funcOut = getActivFuncOf(SIGMOID, in);
+                KERNELS.sigmoidBackward(out, outOffset, grad, gradOffset, res, resOffset, numElems);
+                return;
+            case SOFTMAX:
+                double dotElems = KERNELS.dot(out, outOffset, grad, gradOffset, numElems);
                 for (int elem = 0; elem < numElems; ++elem) {
-                    res[elem] = funcOut[elem] * (1 - funcOut[elem]);
+                    res[resOffset + elem] = out[outOffset + elem] * (grad[gradOffset + elem] - dotElems);
                 }
-                return res;
+                return;
+            case LEAKY_RELU:
+                for (int elem = 0; elem < numElems; ++elem) {
+                    res[resOffset + elem] = out[outOffset + elem] > 0.0 ? grad[gradOffset + elem] : (0.01 * grad[gradOffset + elem]);
+                }
+                return;
+            case RELU:
+                for (int elem = 0; elem < numElems; ++elem) {
+                    res[resOffset + elem] = out[outOffset + elem] > 0.0 ? grad[gradOffset + elem] : 0.0;
+                }
+                return;
+            default:
+                throw new IllegalArgumentException(String.format("Loss function does not exist / not yet supported!. Please try %s", values().toString()));
+        }
+    }
+
+    private static void backpropagate(ActivFunc activFunc, float[] out, int outOffset, float[] grad, int gradOffset, float[] res, int resOffset, int numElems) {
+        switch(activFunc) {
+            case SIGMOID:
+                KERNELS.sigmoidBackward(out, outOffset, grad, gradOffset, res, resOffset, numElems);
+                return;
             case SOFTMAX:
-                funcOut = getActivFuncOf(SOFTMAX, in);
+                float dotElems = KERNELS.dot(out, outOffset, grad, gradOffset, numElems);
                 for (int elem = 0; elem < numElems; ++elem) {
-                    res[elem] = funcOut[elem] * (1 - funcOut[elem]);
+                    res[resOffset + elem] = out[outOffset + elem] * (grad[gradOffset + elem] - dotElems);
                 }
-                return res;
+                return;
             case LEAKY_RELU:
                 for (int elem = 0; elem < numElems; ++elem) {
-                    res[elem] = in[elem] > 0.0 ? 1.0 : 0.01;
+                    res[resOffset + elem] = out[outOffset + elem] > 0.0f ? grad[gradOffset + elem] : (0.01f * grad[gradOffset + elem]);
                 }
-                return res;
+                return;
             case RELU:
                 for (int elem = 0; elem < numElems; ++elem) {
-                    res[elem] = in[elem] > 0.0 ? in[elem] : 0.0;
+                    res[resOffset + elem] = out[outOffset + elem] > 0.0f ? grad[gradOffset + elem] : 0.0f;
                 }
-                return res;
+                return;
             default:
                 throw new IllegalArgumentException(String.format("Loss function does not exist / not yet supported!. Please try %s", values().toString()));
         }
     }
 
     static double getMaxOf(double[] in) {
-        double max = in[0];
-        for (int elem = 1; elem < in.length; ++elem) {
-            if (in[elem] > max) {
-                max = in[elem];
+        return getMaxOf(in, 0, in.length);
+    }
+
+    static double getMaxOf(double[] in, int offset, int numElems) {
+        double max = in[offset];
+        for (int elem = 1; elem < numElems; ++elem) {
+            if (in[offset + elem] > max) {
+                max = in[offset + elem];
+            }
+        }
+        return max;
+    }
+
+    static float getMaxOf(float[] in, int offset, int numElems) {
+        float max = in[offset];
+        for (int elem = 1; elem < numElems; ++elem) {
+            if (in[offset + elem] > max) {
+                max = in[offset + elem];
             }
         }
         return max;
@@ -136,18 +345,25 @@ enum ActivFunc {
 class Layer implements Serializable {
 
     private static final long serialVersionUID = 1L;
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("numNeurons", int.class),
+            new ObjectStreamField("numWeights", int.class),
+            new ObjectStreamField("W", double[][].class),
+            new ObjectStreamField("B", double[].class),
+            new ObjectStreamField("learnRate", double.class),
+            new ObjectStreamField("weights", double[].class)
+    };
     private int numNeurons;
     private int numWeights;
-    private double[][] W;
-    private double[][] Wt;
+    private Matrix W;
     private double[] B;
     private double learnRate;
+    private transient LayerWorkspace workspace;
 
-    private Layer(int numNeurons, int numWeights, double[][] W, double[][] Wt, double[] B, double learnRate) {
+    Layer(int numNeurons, int numWeights, Matrix W, double[] B, double learnRate) {
         this.numNeurons = numNeurons;
         this.numWeights = numWeights;
         this.W = W;
-        this.Wt = Wt;
         this.B = B;
         this.learnRate = learnRate;
     }
@@ -160,14 +376,10 @@ class Layer implements Serializable {
         return numWeights;
     }
 
-    double[][] getW() {
+    Matrix getW() {
         return W;
     }
 
-    double[][] getWt() {
-        return Wt;
-    }
-
     double[] getB() {
         return B;
     }
@@ -176,17 +388,53 @@ class Layer implements Serializable {
         return learnRate;
     }
 
-    double[] feedforward(double[] X){
-        return Matrix.add(Matrix.makeVector(Matrix.multiply(X, W, numWeights, numNeurons), 1, numNeurons), B);
+    void setLearnRate(double learnRate) {
+        this.learnRate = learnRate;
+    }
+
+    Precision getPrecision() {
+        return W.getPrecision();
+    }
+
+    void setPrecision(Precision precision) {
+        if (precision != W.getPrecision()) {
+            W = W.toPrecision(precision);
+            workspace = null;
+        }
+    }
+
+    LayerWorkspace getWorkspace(int batchCapacity) {
+        if (workspace == null || workspace.getBatchCapacity() < batchCapacity) {
+            workspace = createWorkspace(batchCapacity);
+        }
+        return workspace;
+    }
+
+    LayerWorkspace createWorkspace(int batchCapacity) {
+        return new LayerWorkspace(numNeurons, numWeights, batchCapacity, W.getPrecision());
+    }
+
+    Matrix feedforward(Matrix X, LayerWorkspace ws) {
+        Matrix outLin = ws.outLin.topRows(X.getRows());
+        Matrix.gemm(X, W, B, outLin);
+        return outLin;
+    }
+
+    Matrix feedforward(Matrix X, LayerWorkspace ws, ActivFunc activFunc) {
+        Matrix outActFunc = ws.outActFunc.topRows(X.getRows());
+        ActivFunc.getActivFuncOf(activFunc, feedforward(X, ws), outActFunc);
+        return outActFunc;
+    }
+
+    void computeGradients(Matrix dEdY, Matrix X, LayerWorkspace ws) {
+        Matrix.gemmTransA(X, dEdY, ws.dEdW);
+        Matrix.sumRows(dEdY, ws.dEdB);
     }
 
-    double[] backpropagate(double[] dEdY, double[] X) {
-        double[] dEdB = dEdY;
-        double[][] dEdW = Matrix.multiply(X, dEdY);
-        W = Matrix.subtract(W, Matrix.multiplyScalar(dEdW, numWeights, numNeurons, learnRate), numWeights, numNeurons);
-        Wt = Matrix.transpose(W, numWeights, numNeurons);
-        B = Matrix.subtract(B, Matrix.multiplyScalar(dEdB, learnRate));
-        double[] dEdX = Matrix.makeVector(Matrix.multiply(dEdY, Wt, numNeurons, numWeights), 1, numWeights);
+    Matrix backpropagate(Matrix dEdY, LayerWorkspace prevWs, ActivFunc prevActivFunc) {
+        Matrix dEdX = prevWs.dEdY.topRows(dEdY.getRows());
+        Matrix.gemmTransB(dEdY, W, dEdX);
+        ActivFunc.backpropagate(prevActivFunc, prevWs.outActFunc.topRows(dEdY.getRows()), dEdX, dEdX);
         return dEdX;
     }
 
@@ -200,15 +448,124 @@ class Layer implements Serializable {
         }
         Random randGen = new Random();
         double xavier_init = shouldXavInit ? Math.sqrt(6.0 / (numNeurons + numWeights)) : 1.0;
-        double[][] W_init = new double[numWeights][numNeurons];
-        for (int row = 0; row < numWeights; ++row) {
-            Arrays.setAll(W_init[row], i -> randGen.nextGaussian() * xavier_init);
-        }
-        double[][] Wt_init = Matrix.transpose(W_init, numWeights, numNeurons);
+        Matrix W_init = new Matrix(numWeights, numNeurons);
+        Arrays.setAll(W_init.getData(), i -> randGen.nextGaussian() * xavier_init);
 
         double[] B_init = new double[numNeurons];
         Arrays.fill(B_init, 0.0);
-        return new Layer(numNeurons, numWeights, W_init, Wt_init, B_init, learnRate);
+        return new Layer(numNeurons, numWeights, W_init, B_init, learnRate);
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("numNeurons", numNeurons);
+        fields.put("numWeights", numWeights);
+        fields.put("B", B);
+        fields.put("learnRate", learnRate);
+        fields.put("weights", W.copy(Precision.FLOAT64).getData());
+        out.writeFields();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        numNeurons = fields.get("numNeurons", 0);
+        numWeights = fields.get("numWeights", 0);
+        B = (double[]) fields.get("B", null);
+        learnRate = fields.get("learnRate", 0.0);
+        double[] weights = (double[]) fields.get("weights", null);
+        double[][] legacyW = (double[][]) fields.get("W", null);
+        if (weights != null) {
+            W = new Matrix(numWeights, numNeurons, weights);
+        } else if (legacyW != null) {
+            W = Matrix.fromJagged(legacyW, numWeights, numNeurons);
+        } else {
+            throw new InvalidObjectException("Layer has no weights stored!");
+        }
+    }
+}
+
+class LayerWorkspace {
+
+    final Matrix outLin;
+    final Matrix outActFunc;
+    final Matrix dEdY;
+    final Matrix dEdW;
+    final double[] dEdB;
+    final Matrix stagedIn;
+    final Matrix stagedActual;
+
+    LayerWorkspace(int numNeurons, int numWeights, int batchCapacity, Precision precision) {
+        this.outLin = new Matrix(batchCapacity, numNeurons, precision);
+        this.outActFunc = new Matrix(batchCapacity, numNeurons, precision);
+        this.dEdY = new Matrix(batchCapacity, numNeurons, precision);
+        this.dEdW = new Matrix(numWeights, numNeurons, precision);
+        this.dEdB = new double[numNeurons];
+        boolean isFloat = precision == Precision.FLOAT32;
+        this.stagedIn = isFloat ? new Matrix(batchCapacity, numWeights, precision) : null;
+        this.stagedActual = isFloat ? new Matrix(batchCapacity, numNeurons, precision) : null;
+    }
+
+    Matrix stageIn(Matrix in) {
+        return stage(in, stagedIn);
+    }
+
+    Matrix stageActual(Matrix actual) {
+        return stage(actual, stagedActual);
+    }
+
+    private static Matrix stage(Matrix mat, Matrix staging) {
+        if (staging == null || mat.isFloat()) {
+            return mat;
+        }
+        Matrix res = staging.topRows(mat.getRows());
+        Matrix.convert(mat, res);
+        return res;
+    }
+
+    int getBatchCapacity() {
+        return outLin.getRows();
+    }
+}
+
+class WorkerStats {
+
+    private volatile long samples;
+    private volatile double lossSum;
+    private volatile long busyNanos;
+
+    void record(int numSamples, double loss, long nanos) {
+        samples += numSamples;
+        lossSum += loss;
+        busyNanos += nanos;
+    }
+
+    long getSamples() {
+        return samples;
+    }
+
+    double getMeanLoss() {
+        return samples == 0 ? 0.0 : lossSum / samples;
+    }
+
+    double getBusySecs() {
+        return busyNanos / 1e9;
+    }
+
+    static long getTotalSamples(WorkerStats ... stats) {
+        long total = 0;
+        for (WorkerStats stat : stats) {
+            total += stat.samples;
+        }
+        return total;
+    }
+
+    static double getMeanLoss(WorkerStats ... stats) {
+        double lossSum = 0.0;
+        for (WorkerStats stat : stats) {
+            lossSum += stat.lossSum;
+        }
+        long total = getTotalSamples(stats);
+        return total == 0 ? 0.0 : lossSum / total;
     }
 }
 
@@ -280,6 +637,7 @@ abstract class Scaler implements Serializable {
     private double std;
     private double scaleFactor;
     private String scaleMethodType;
+    private transient volatile double[][] affine;
 
     double getMean() {
         return mean;
@@ -313,36 +671,71 @@ abstract class Scaler implements Serializable {
         this.std = std;
     }
 
-    abstract double scale(double num);
+    abstract void fillAffine(double[] multipliers, double[] offsets);
+
+    final double[] getMultipliers(int numFeatures) {
+        return getAffine(numFeatures)[0];
+    }
+
+    final double[] getOffsets(int numFeatures) {
+        return getAffine(numFeatures)[1];
+    }
+
+    private double[][] getAffine(int numFeatures) {
+        double[][] params = affine;
+        if (params == null || params[0].length != numFeatures) {
+            params = new double[][]{new double[numFeatures], new double[numFeatures]};
+            fillAffine(params[0], params[1]);
+            affine = params;
+        }
+        return params;
+    }
+
+    final void scaleSample(double[] in, int offset, int numFeatures) {
+        double[][] params = getAffine(numFeatures);
+        double[] multipliers = params[0];
+        double[] offsets = params[1];
+        for (int elem = 0; elem < numFeatures; ++elem) {
+            in[offset + elem] = in[offset + elem] * multipliers[elem] + offsets[elem];
+        }
+    }
 }
 
 class Identity extends Scaler {
 
+    private static final long serialVersionUID = -4969357266181054489L;
+
     Identity() {
         setScaleMethodType("identity");
     }
 
     @Override
-    double scale(double num) {
-        return num;
+    void fillAffine(double[] multipliers, double[] offsets) {
+        Arrays.fill(multipliers, 1.0);
+        Arrays.fill(offsets, 0.0);
     }
 }
 
 class Normalizer extends Scaler {
 
+    private static final long serialVersionUID = 4905510229362336850L;
+
     Normalizer(double scaleFactor) {
         setScaleFactor(scaleFactor);
         setScaleMethodType("normalize");
     }
 
     @Override
-    double scale(double num) {
-        return (num * getScaleFactor());
+    void fillAffine(double[] multipliers, double[] offsets) {
+        Arrays.fill(multipliers, getScaleFactor());
+        Arrays.fill(offsets, 0.0);
     }
 }
 
 class Standardizer extends Scaler {
 
+    private static final long serialVersionUID = 8742170182836939572L;
+
     Standardizer(double mean, double std) {
         setMean(mean);
         setStd(std);
@@ -350,81 +743,525 @@ class Standardizer extends Scaler {
     }
 
     @Override
-    double scale(double num) {
-        return ((num - getMean()) / getStd());
+    void fillAffine(double[] multipliers, double[] offsets) {
+        Arrays.fill(multipliers, 1.0 / getStd());
+        Arrays.fill(offsets, -getMean() / getStd());
     }
 }
 
 class Centralizer extends Scaler {
 
+    private static final long serialVersionUID = -7356196089900458273L;
+
     Centralizer(double mean) {
         setMean(mean);
         setScaleMethodType("centralize");
     }
 
     @Override
-    double scale(double num) {
-        return (num - getMean());
+    void fillAffine(double[] multipliers, double[] offsets) {
+        Arrays.fill(multipliers, 1.0);
+        Arrays.fill(offsets, -getMean());
+    }
+}
+
+class FeatureStandardizer extends Scaler {
+
+    private static final long serialVersionUID = 1L;
+    static final double MIN_STD = 1e-6;
+    private final double[] means;
+    private final double[] stds;
+
+    FeatureStandardizer(double[] means, double[] stds, double mean, double std) {
+        if (means.length != stds.length) {
+            throw new IllegalArgumentException(String.format("Cannot standardize with %d means and %d standard deviations", means.length, stds.length));
+        }
+        this.means = means.clone();
+        this.stds = stds.clone();
+        setMean(mean);
+        setStd(std);
+        setScaleMethodType("standardize_features");
+    }
+
+    double[] getMeans() {
+        return means;
+    }
+
+    double[] getStds() {
+        return stds;
+    }
+
+    @Override
+    void fillAffine(double[] multipliers, double[] offsets) {
+        if (multipliers.length != means.length) {
+            throw new IllegalArgumentException(String.format("Scaler has parameters for %d features but samples have %d", means.length, multipliers.length));
+        }
+        for (int elem = 0; elem < means.length; ++elem) {
+            multipliers[elem] = stds[elem] > MIN_STD ? 1.0 / stds[elem] : 1.0;
+            offsets[elem] = -means[elem] * multipliers[elem];
+        }
     }
 }
 
 class Network implements Serializable {
 
     private static final long serialVersionUID = 3L;
+    static final int MAX_LOADER_THREADS = 4;
     private int numLayers;
     private Loss lossType;
     private ActivFunc[] activFuncType;
     private Layer[] layers;
     private File datasetFile;
     private Scaler scaler;
-
-    private Network(int numLayers, Layer[] layers, Loss lossType, ActivFunc[] activFuncType, File datasetFile, Scaler scaler) {
+    private Precision precision;
+    private Optimizer optimizer;
+    private TrainingState trainingState;
+    private transient LayerWorkspace[][] workspaces;
+    private transient Map<File, CachedDataset> datasetCaches;
+    private transient long cacheBudget = getDefaultCacheBudget();
+
+    Network(int numLayers, Layer[] layers, Loss lossType, ActivFunc[] activFuncType, File datasetFile, Scaler scaler, Precision precision) {
         this.numLayers = numLayers;
         this.layers = layers;
         this.lossType = lossType;
         this.activFuncType = activFuncType;
         this.datasetFile = datasetFile;
         this.scaler = scaler;
+        this.optimizer = Optimizer.createOptimizer(OptimizerType.SGD);
+        setPrecision(precision);
+    }
+
+    Scaler getScaler() {
+        return scaler;
+    }
+
+    Layer[] getLayers() {
+        return layers;
+    }
+
+    Loss getLossType() {
+        return lossType;
+    }
+
+    ActivFunc[] getActivFuncTypes() {
+        return activFuncType;
+    }
+
+    File getDatasetFile() {
+        return datasetFile;
+    }
+
+    Precision getPrecision() {
+        return precision;
+    }
+
+    Optimizer getOptimizer() {
+        return optimizer;
+    }
+
+    void setOptimizer(Optimizer optimizer) {
+        this.optimizer = optimizer;
+    }
+
+    TrainingState getTrainingState() {
+        return trainingState;
+    }
+
+    void setTrainingState(TrainingState trainingState) {
+        this.trainingState = trainingState;
+    }
+
+    Network snapshot(TrainingState state) {
+        Layer[] copies = new Layer[numLayers];
+        for (int layer = 0; layer < numLayers; ++layer) {
+            copies[layer] = new Layer(layers[layer].getNumNeurons(), layers[layer].getNumWeights(), layers[layer].getW().copy(), layers[layer].getB().clone(), layers[layer].getLearnRate());
+        }
+        Network snapshot = new Network(numLayers, copies, lossType, activFuncType.clone(), datasetFile, scaler, precision);
+        snapshot.setOptimizer(optimizer.copy());
+        snapshot.setTrainingState(state);
+        return snapshot;
+    }
+
+    void setLearnRate(double learnRate) {
+        if (!(learnRate > 0 && learnRate <= 10.0)) {
+            throw new IllegalArgumentException(String.format("Learning rate should be in range (0, 10] (%f)", learnRate));
+        }
+        for (Layer layer : layers) {
+            layer.setLearnRate(learnRate);
+        }
+    }
+
+    void setPrecision(Precision precision) {
+        this.precision = precision;
+        for (Layer layer : layers) {
+            layer.setPrecision(precision);
+        }
+        workspaces = null;
+    }
+
+    Predictor createPredictor() {
+        return new Predictor(layers, activFuncType, scaler);
+    }
+
+    QuantizedPredictor quantize(Dataset dataset, int numSamples, long seed) throws IOException {
+        int numInputs = layers[0].getNumWeights();
+        if (dataset.getNumFeatures() != numInputs) {
+            throw new IllegalArgumentException(String.format("Dataset samples have %d features but the network takes %d inputs", dataset.getNumFeatures(), numInputs));
+        } else if (numSamples < 1 || dataset.size() == 0) {
+            throw new IllegalArgumentException(String.format("Cannot calibrate on %d of %d samples", numSamples, dataset.size()));
+        }
+        int[] order = new int[dataset.size()];
+        Arrays.setAll(order, index -> index);
+        shuffle(order, new Random(seed));
+        numSamples = Math.min(numSamples, order.length);
+
+        double[] rangeMins = new double[numLayers];
+        double[] rangeMaxs = new double[numLayers];
+        Arrays.fill(rangeMins, Double.POSITIVE_INFINITY);
+        Arrays.fill(rangeMaxs, Double.NEGATIVE_INFINITY);
+        int batchCapacity = Math.min(numSamples, Predictor.MAX_BATCH);
+        LayerWorkspace[] ws = prepareWorkspaces(1, batchCapacity)[0];
+        Matrix in = new Matrix(batchCapacity, numInputs);
+        for (int start = 0; start < numSamples; start += batchCapacity) {
+            int batchSize = Math.min(batchCapacity, numSamples - start);
+            for (int sample = 0; sample < batchSize; ++sample) {
+                readSample(dataset, order[start + sample], in.getData(), in.indexOf(sample, 0));
+            }
+            Matrix inOut = ws[0].stageIn(in.topRows(batchSize));
+            for (int layer = 0; layer < numLayers; ++layer) {
+                for (int row = 0; row < batchSize; ++row) {
+                    for (int col = 0; col < inOut.getCols(); ++col) {
+                        rangeMins[layer] = Math.min(rangeMins[layer], inOut.get(row, col));
+                        rangeMaxs[layer] = Math.max(rangeMaxs[layer], inOut.get(row, col));
+                    }
+                }
+                inOut = layers[layer].feedforward(inOut, ws[layer], activFuncType[layer]);
+            }
+        }
+        return new QuantizedPredictor(layers, activFuncType, scaler, rangeMins, rangeMaxs);
     }
 
     void setDatasetFile(File datasetFile) {
         this.datasetFile = datasetFile;
     }
 
-    void train(int epochs) throws IOException {
+    long getCacheBudget() {
+        return cacheBudget;
+    }
 
-        if (!datasetFile.exists()) {
-            System.out.println("Dataset does not exist!");
+    void setCacheBudget(long cacheBudget) throws IOException {
+        this.cacheBudget = cacheBudget;
+        clearDatasetCaches();
+    }
+
+    static long getDefaultCacheBudget() {
+        return Runtime.getRuntime().maxMemory() / 4;
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        cacheBudget = getDefaultCacheBudget();
+        if (optimizer == null) {
+            optimizer = Optimizer.createOptimizer(OptimizerType.SGD);
+        }
+        setPrecision(precision == null ? Precision.FLOAT64 : precision);
+    }
+
+    private Dataset openDataset(File file) throws IOException {
+        if (Dataset.isSingleSample(file)) {
+            return Dataset.open(file);
+        }
+        if (datasetCaches == null) {
+            datasetCaches = new HashMap<>();
+        }
+        CachedDataset cache = datasetCaches.get(file);
+        if (cache == null || cache.getLastModified() != file.lastModified()) {
+            if (cache != null) {
+                cache.close();
+            }
+            cache = new CachedDataset(Dataset.open(file), scaler, cacheBudget, file.lastModified());
+            datasetCaches.put(file, cache);
+        }
+        return cache;
+    }
+
+    private void clearDatasetCaches() throws IOException {
+        if (datasetCaches != null) {
+            for (CachedDataset cache : datasetCaches.values()) {
+                cache.close();
+            }
+            datasetCaches.clear();
+        }
+    }
+
+    void train(int epochs, int batchSize, int numThreads, long seed, TrainingMode mode) throws IOException {
+        train(epochs, batchSize, numThreads, seed, mode, null, null);
+    }
+
+    void train(int epochs, int batchSize, int numThreads, long seed, TrainingMode mode, TrainingController controller, Checkpointer checkpointer) throws IOException {
+        train(epochs, batchSize, numThreads, seed, mode, controller, checkpointer, null);
+    }
+
+    void resume(int numThreads, TrainingMode mode, TrainingController controller, Checkpointer checkpointer) throws IOException {
+        if (trainingState == null) {
+            System.out.println("Network has no interrupted training run to resume!");
         } else {
-            double[] in = new double[layers[0].getNumWeights()];
-            double[] actual = new double[layers[numLayers - 1].getNumNeurons()];
-            double loss;
+            train(trainingState.getRemainingEpochs(), trainingState.batchSize, numThreads, 0, mode, controller, checkpointer, trainingState);
+        }
+    }
 
-            File[] trainFiles = datasetFile.listFiles();
-            if (trainFiles.length == 0) {
+    private void train(int epochs, int batchSize, int numThreads, long seed, TrainingMode mode, TrainingController controller, Checkpointer checkpointer, TrainingState resumeState) throws IOException {
+
+        if (batchSize < 1) {
+            System.out.printf("Cannot have < 1 sample (%d) in a batch\n", batchSize);
+        } else if (numThreads < 1) {
+            System.out.printf("Cannot train on < 1 thread (%d)\n", numThreads);
+        } else if (!datasetFile.exists()) {
+            System.out.println("Dataset does not exist!");
+        } else {
+            Dataset dataset = openDataset(datasetFile);
+            if (dataset.size() == 0) {
                 System.out.println("Dataset does not have any training examples!");
+            } else if (dataset.getNumFeatures() != layers[0].getNumWeights()) {
+                System.out.printf("Dataset samples have %d features but the network takes %d inputs!\n", dataset.getNumFeatures(), layers[0].getNumWeights());
+            } else if (resumeState != null && !isValidOrder(resumeState.order, dataset.size())) {
+                System.out.printf("Interrupted run does not match the dataset's %d samples!\n", dataset.size());
             } else {
-                int numFiles = trainFiles.length;
-                int index;
-                File tempFile;
-                Random randGen = new Random();
-
-                for (int epoch = 0; epoch < epochs; ++epoch) {
-                    for (int file = numFiles - 1; file >= 0; --file) {
-                        index = randGen.nextInt(file + 1);
-                        processSample(trainFiles[index], in, actual);
-                        loss = learn(in, actual);
-                        System.out.printf("\rEpoch (%d/%d): Trained files (%d/%d) Loss : %.7f", epoch + 1, epochs, numFiles - file, numFiles, loss);
-                        tempFile = trainFiles[index];
-                        trainFiles[index] = trainFiles[file];
-                        trainFiles[file] = tempFile;
+                int[] order;
+                ResumableRandom randGen;
+                if (resumeState == null) {
+                    order = new int[dataset.size()];
+                    Arrays.setAll(order, i -> i);
+                    randGen = new ResumableRandom(seed);
+                } else {
+                    order = resumeState.order.clone();
+                    randGen = resumeState.restoreRandom();
+                    System.out.printf("Resuming at %s\n", resumeState);
+                }
+                trainingState = null;
+                int epochOffset = resumeState == null ? 0 : resumeState.epoch;
+                int startBatch = resumeState == null ? 0 : resumeState.batchInEpoch;
+                try {
+                    if (controller != null) {
+                        try {
+                            if (resumeState == null) {
+                                shuffle(order, randGen);
+                                order = controller.split(dataset, order, numThreads);
+                            } else {
+                                order = controller.resume(dataset, order, numThreads);
+                            }
+                        } catch (IllegalArgumentException e) {
+                            System.out.printf("Could not hold out a validation split! (%s)\n", e.getMessage());
+                            trainingState = resumeState;
+                            return;
+                        }
+                    }
+                    boolean stoppedEarly;
+                    if (mode == TrainingMode.HOGWILD) {
+                        if (startBatch > 0) {
+                            System.out.printf("Hogwild training restarts epoch %d from its first batch\n", epochOffset + 1);
+                        }
+                        stoppedEarly = trainHogwild(dataset, order, epochOffset, epochs, batchSize, numThreads, randGen, controller, checkpointer);
+                    } else {
+                        stoppedEarly = trainSynchronous(dataset, order, epochOffset, epochs, startBatch, batchSize, numThreads, randGen, controller, checkpointer);
+                    }
+                    System.out.println();
+                    if (controller != null) {
+                        controller.report(stoppedEarly);
+                    }
+                    if (checkpointer != null) {
+                        checkpointer.close();
+                        System.out.println(checkpointer);
+                    }
+                } finally {
+                    if (controller != null) {
+                        controller.close();
+                    }
+                    if (checkpointer != null) {
+                        checkpointer.close();
                     }
                 }
-                System.out.println();
+                System.out.println(dataset);
+            }
+        }
+    }
+
+    private static boolean isValidOrder(int[] order, int numFiles) {
+        for (int file : order) {
+            if (file < 0 || file >= numFiles) {
+                return false;
+            }
+        }
+        return order.length <= numFiles;
+    }
+
+    private boolean trainSynchronous(Dataset dataset, int[] order, int epochOffset, int epochs, int startBatch, int batchSize, int numThreads, ResumableRandom randGen, TrainingController controller, Checkpointer checkpointer) throws IOException {
+        int numFiles = order.length;
+        int numLoaders = Math.max(1, Math.min(MAX_LOADER_THREADS, Runtime.getRuntime().availableProcessors() - numThreads));
+        double loss;
+        int startEpoch = optimizer.getEpoch();
+        int epochsDone = epochs;
+        long batchesTrained = 0;
+        boolean stoppedEarly = false;
+        BatchLoader loader = new BatchLoader(dataset, scaler, order, epochs, startBatch, batchSize, layers[numLayers - 1].getNumNeurons(), randGen, numLoaders, 2 * numLoaders + 1);
+        ForkJoinPool pool = numThreads > 1 ? new ForkJoinPool(numThreads) : null;
+
+        try (loader) {
+            while (loader.hasNext()) {
+                Batch batch = loader.take();
+                Matrix in = batch.in.topRows(batch.size);
+                Matrix actual = batch.actual.topRows(batch.size);
+                optimizer.setEpoch(startEpoch + batch.epoch);
+                loss = (pool == null) ? learn(in, actual) : learn(in, actual, pool, numThreads);
+                int epoch = batch.epoch;
+                int trained = batch.trained;
+                loader.release();
+                System.out.printf("\rEpoch (%d/%d): Trained files (%d/%d) Loss : %.7f", epochOffset + epoch + 1, epochOffset + epochs, trained, numFiles, loss);
+                ++batchesTrained;
+                boolean epochEnd = trained == numFiles;
+                if (epochEnd) {
+                    optimizer.setEpoch(startEpoch + epoch + 1);
+                }
+                boolean checkpointDue = checkpointer != null && checkpointer.isDue(batchesTrained);
+                boolean evaluationDue = controller != null && (epochEnd || controller.shouldEvaluate(batchesTrained));
+                TrainingState state = null;
+                if (checkpointDue || evaluationDue) {
+                    state = epochEnd ? loader.getTrainingState(epoch + 1, 0, epochOffset, epochOffset + epochs) : loader.getTrainingState(epoch, (trained + batchSize - 1) / batchSize, epochOffset, epochOffset + epochs);
+                }
+                if (checkpointDue) {
+                    checkpointer.checkpoint(this, state, batchesTrained);
+                }
+                if (evaluationDue) {
+                    if (controller.evaluate(this, state, epochOffset + epoch, (long) epoch * numFiles + trained)) {
+                        epochsDone = epochEnd ? epoch + 1 : epoch;
+                        stoppedEarly = true;
+                        break;
+                    }
+                }
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+        optimizer.setEpoch(startEpoch + epochsDone);
+        System.out.println();
+        System.out.print(loader);
+        return stoppedEarly;
+    }
+
+    private boolean trainHogwild(Dataset dataset, int[] order, int epochOffset, int epochs, int batchSize, int numThreads, ResumableRandom randGen, TrainingController controller, Checkpointer checkpointer) throws IOException {
+        int numFiles = order.length;
+        LayerWorkspace[][] threadWs = prepareWorkspaces(numThreads, batchSize);
+        WorkerStats[] stats = new WorkerStats[numThreads];
+        for (int thread = 0; thread < numThreads; ++thread) {
+            stats[thread] = new WorkerStats();
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        long startTime = System.nanoTime();
+        int startEpoch = optimizer.getEpoch();
+        int epochsDone = epochs;
+        boolean stoppedEarly = false;
+
+        try {
+            for (int epoch = 0; epoch < epochs; ++epoch) {
+                optimizer.setEpoch(startEpoch + epoch);
+                shuffle(order, randGen);
+                List<Future<?>> futures = new ArrayList<>(numThreads);
+                for (int thread = 0; thread < numThreads; ++thread) {
+                    int worker = thread;
+                    futures.add(executor.submit(() -> {
+                        runHogwildWorker(dataset, order, worker, numThreads, batchSize, threadWs[worker], stats[worker]);
+                        return null;
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    while (!awaitWorker(future)) {
+                        System.out.printf("\rEpoch (%d/%d): Trained files (%d/%d) Loss : %.7f", epochOffset + epoch + 1, epochOffset + epochs, WorkerStats.getTotalSamples(stats) - (long) epoch * numFiles, numFiles, WorkerStats.getMeanLoss(stats));
+                    }
+                }
+                System.out.printf("\rEpoch (%d/%d): Trained files (%d/%d) Loss : %.7f", epochOffset + epoch + 1, epochOffset + epochs, numFiles, numFiles, WorkerStats.getMeanLoss(stats));
+                optimizer.setEpoch(startEpoch + epoch + 1);
+                long batchesTrained = (epoch + 1L) * ((numFiles + batchSize - 1) / batchSize);
+                boolean checkpointDue = checkpointer != null && checkpointer.isDue(batchesTrained);
+                TrainingState state = null;
+                if (checkpointDue || controller != null) {
+                    state = new TrainingState(epochOffset + epoch + 1, epochOffset + epochs, 0, batchSize, order.clone(), randGen.getState());
+                }
+                if (checkpointDue) {
+                    checkpointer.checkpoint(this, state, batchesTrained);
+                }
+                if (controller != null) {
+                    if (controller.evaluate(this, state, epochOffset + epoch, WorkerStats.getTotalSamples(stats))) {
+                        epochsDone = epoch + 1;
+                        stoppedEarly = true;
+                        break;
+                    }
+                }
+            }
+            optimizer.setEpoch(startEpoch + epochsDone);
+        } finally {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                executor.shutdownNow();
+            }
+        }
+
+        double elapsedSecs = (System.nanoTime() - startTime) / 1e9;
+        System.out.println();
+        for (int thread = 0; thread < numThreads; ++thread) {
+            System.out.printf("Thread #%d: %d samples, mean loss %.7f, %.1f samples/sec\n", thread + 1, stats[thread].getSamples(), stats[thread].getMeanLoss(), stats[thread].getSamples() / stats[thread].getBusySecs());
+        }
+        System.out.printf("Total: %d samples in %.2f s, %.1f samples/sec", WorkerStats.getTotalSamples(stats), elapsedSecs, WorkerStats.getTotalSamples(stats) / elapsedSecs);
+        return stoppedEarly;
+    }
+
+    private void runHogwildWorker(Dataset dataset, int[] order, int worker, int numWorkers, int batchSize, LayerWorkspace[] ws, WorkerStats stats) throws IOException {
+        Matrix in = new Matrix(batchSize, layers[0].getNumWeights());
+        Matrix actual = new Matrix(batchSize, layers[numLayers - 1].getNumNeurons());
+        int batch = 0;
+
+        for (int file = worker; file < order.length; file += numWorkers) {
+            processSample(dataset, order[file], in, actual, batch);
+            ++batch;
+            if (batch == batchSize || file + numWorkers >= order.length) {
+                long batchStart = System.nanoTime();
+                double loss = learn(in.topRows(batch), actual.topRows(batch), ws);
+                stats.record(batch, loss * batch, System.nanoTime() - batchStart);
+                batch = 0;
             }
         }
     }
 
+    private static boolean awaitWorker(Future<?> future) throws IOException {
+        try {
+            future.get(1, TimeUnit.SECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while training!");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    static void shuffle(int[] order, Random randGen) {
+        for (int file = order.length - 1; file > 0; --file) {
+            int index = randGen.nextInt(file + 1);
+            int tempSample = order[index];
+            order[index] = order[file];
+            order[file] = tempSample;
+        }
+    }
+
     void test(String inFileName) throws IOException {
 
         File datasetFile;
@@ -438,103 +1275,138 @@ class Network implements Serializable {
         if (!datasetFile.exists()) {
             System.out.println("Dataset does not exist!");
         } else {
-            double[] in = new double[784];
-            if (datasetFile.isFile()) {
-                readSample(datasetFile, in);
+            Dataset dataset = openDataset(datasetFile);
+            Matrix in = new Matrix(1, dataset.getNumFeatures());
+            if (dataset.getNumFeatures() != layers[0].getNumWeights()) {
+                System.out.printf("Dataset samples have %d features but the network takes %d inputs!\n", dataset.getNumFeatures(), layers[0].getNumWeights());
+            } else if (Dataset.isSingleSample(datasetFile)) {
+                readSample(dataset, 0, in.getData(), 0);
                 int pred = displayAns(in);
                 System.out.printf("This number is %d\n", pred);
+            } else if (dataset.size() == 0) {
+                System.out.println("Dataset does not have any training examples!");
             } else {
-                File[] trainFiles = datasetFile.listFiles();
-                if (trainFiles.length == 0) {
-                    System.out.println("Dataset does not have any training examples!");
-                } else {
-                    int numFiles = trainFiles.length;
-                    int numCorrect = 0;
-                    for (int file = 0; file < numFiles; ++file) {
-                        int ans = readSample(trainFiles[file], in);
-                        int pred = displayAns(in);
-                        if (pred == ans) {
-                            ++numCorrect;
-                        }
-                        System.out.printf("\rThe network prediction accuracy: %d/%d, %.2f%%", numCorrect, file + 1, (numCorrect * 100) / (double) (file + 1));
+                int numFiles = dataset.size();
+                int numCorrect = 0;
+                for (int file = 0; file < numFiles; ++file) {
+                    int ans = readSample(dataset, file, in.getData(), 0);
+                    int pred = displayAns(in);
+                    if (pred == ans) {
+                        ++numCorrect;
                     }
-                    System.out.println();
+                    System.out.printf("\rThe network prediction accuracy: %d/%d, %.2f%%", numCorrect, file + 1, (numCorrect * 100) / (double) (file + 1));
                 }
+                System.out.println();
             }
         }
     }
 
-    private int readSample(File file, double[] in) throws IOException {
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            for (int row = 0; row < 28; ++row) {
-                double[] arrTemp = Arrays.stream(reader.readLine().split("\t")).mapToDouble(num -> scaler.scale(Double.parseDouble(num))).toArray();
-                System.arraycopy(arrTemp, 0, in, 28 * row, 28);
-            }
-            return Integer.parseInt(reader.readLine());
-        } catch (FileNotFoundException e) {
-            throw new FileNotFoundException();
-        }
+    int readSample(Dataset dataset, int index, double[] in, int offset) throws IOException {
+        return dataset.readScaledSample(index, in, offset, scaler);
     }
 
-    private void processSample(File file, double[] in, double[] actual) throws IOException {
-        int ans = readSample(file, in);
-        oneHotEncode(ans, actual);
+    private void processSample(Dataset dataset, int index, Matrix in, Matrix actual, int sample) throws IOException {
+        int ans = readSample(dataset, index, in.getData(), in.indexOf(sample, 0));
+        oneHotEncode(ans, actual.getData(), actual.indexOf(sample, 0), actual.getCols());
     }
 
-    private static void oneHotEncode(int ans, double[] arr) {
-        assert (ans < arr.length && ans >= 0) : String.format("Invalid answer (%s) for training example with output vector of length %d", ans, arr.length);
-        Arrays.fill(arr, 0.0);
-        arr[ans] = 1.0;
+    static void oneHotEncode(int ans, double[] arr, int offset, int length) {
+        assert (ans < length && ans >= 0) : String.format("Invalid answer (%s) for training example with output vector of length %d", ans, length);
+        Arrays.fill(arr, offset, offset + length, 0.0);
+        arr[offset + ans] = 1.0;
     }
 
-    private double learn(double[] in, double[] actual) {
-        double[] inOut = in;
-        double[][] outsLin = new double[numLayers][];
-        double[][] outsActFunc = new double[numLayers][];
+    double learn(Matrix in, Matrix actual) {
+        return learn(in, actual, prepareWorkspaces(1, in.getRows())[0]);
+    }
 
-        for (int layer = 0; layer < numLayers; ++layer) {
-            inOut = layers[layer].feedforward(inOut);
-            outsLin[layer] = inOut;
-            inOut = ActivFunc.getActivFuncOf(activFuncType[layer], inOut);
-            outsActFunc[layer] = inOut;
-        }
+    private double learn(Matrix in, Matrix actual, LayerWorkspace[] ws) {
+        int batchSize = in.getRows();
+        double loss = computeGradients(in, actual, ws, 1.0 / batchSize);
+        applyGradients(ws);
+        return loss / batchSize;
+    }
 
-        double loss = Loss.getLossOf(lossType, actual, inOut);
-        double[] dEdYActFunc = Loss.getDerivLossOf(lossType, actual, inOut);
-        double[] dEdY;
-        double[] X;
-        for (int layer = numLayers - 1; layer > 0; --layer) {
-            dEdY = (layer == numLayers - 1) ? dEdYActFunc : Matrix.multiplyElemWise(dEdYActFunc, ActivFunc.getDerivActivFuncOf(activFuncType[layer], outsLin[layer]));
-            X = outsActFunc[layer - 1];
-            dEdYActFunc = layers[layer].backpropagate(dEdY, X);
+    private double learn(Matrix in, Matrix actual, ForkJoinPool pool, int numThreads) {
+        int batchSize = in.getRows();
+        int numShards = Math.min(numThreads, batchSize);
+        LayerWorkspace[][] shardWs = prepareWorkspaces(numShards, (batchSize + numShards - 1) / numShards);
+        double loss = pool.invoke(new GradientTask(this, in, actual, shardWs, 0, numShards, 1.0 / batchSize));
+        applyGradients(shardWs[0]);
+        return loss / batchSize;
+    }
+
+    double computeGradients(Matrix in, Matrix actual, LayerWorkspace[] ws, double scale) {
+        int batchSize = in.getRows();
+        in = ws[0].stageIn(in);
+        actual = ws[numLayers - 1].stageActual(actual);
+        Matrix inOut = in;
+        int outLayer = numLayers - 1;
+
+        for (int layer = 0; layer < outLayer; ++layer) {
+            inOut = layers[layer].feedforward(inOut, ws[layer], activFuncType[layer]);
         }
-        dEdY = Matrix.multiplyElemWise(dEdYActFunc, ActivFunc.getDerivActivFuncOf(activFuncType[0], outsLin[0]));
-        X = in;
-        layers[0].backpropagate(dEdY, X);
 
+        double loss;
+        Matrix dEdY = ws[outLayer].dEdY.topRows(batchSize);
+        if (Loss.hasSoftmaxHead(lossType, activFuncType[outLayer])) {
+            Matrix logits = layers[outLayer].feedforward(inOut, ws[outLayer]);
+            loss = Loss.getSoftmaxCrossEntropyOf(actual, logits, dEdY, scale) * batchSize;
+        } else {
+            inOut = layers[outLayer].feedforward(inOut, ws[outLayer], activFuncType[outLayer]);
+            loss = Loss.getLossOf(lossType, actual, inOut) * batchSize;
+            Loss.getDerivLossOf(lossType, actual, inOut, dEdY, scale);
+            ActivFunc.backpropagate(activFuncType[outLayer], inOut, dEdY, dEdY);
+        }
+        for (int layer = numLayers - 1; layer >= 0; --layer) {
+            Matrix X = (layer == 0) ? in : ws[layer - 1].outActFunc.topRows(batchSize);
+            layers[layer].computeGradients(dEdY, X, ws[layer]);
+            if (layer > 0) {
+                dEdY = layers[layer].backpropagate(dEdY, ws[layer - 1], activFuncType[layer - 1]);
+            }
+        }
         return loss;
     }
 
-    private int displayAns(double[] in) {
+    private void applyGradients(LayerWorkspace[] ws) {
+        optimizer.apply(layers, ws);
+    }
+
+    private LayerWorkspace[][] prepareWorkspaces(int numShards, int batchCapacity) {
+        if (workspaces == null || workspaces.length < numShards) {
+            workspaces = (workspaces == null) ? new LayerWorkspace[numShards][] : Arrays.copyOf(workspaces, numShards);
+        }
+        for (int shard = 0; shard < numShards; ++shard) {
+            if (workspaces[shard] == null || workspaces[shard][0].getBatchCapacity() < batchCapacity) {
+                workspaces[shard] = new LayerWorkspace[numLayers];
+                for (int layer = 0; layer < numLayers; ++layer) {
+                    workspaces[shard][layer] = (shard == 0) ? layers[layer].getWorkspace(batchCapacity) : layers[layer].createWorkspace(batchCapacity);
+                }
+            }
+        }
+        return workspaces;
+    }
+
+    int displayAns(Matrix in) {
 
-        double[] inOut = in;
+        LayerWorkspace[] ws = prepareWorkspaces(1, 1)[0];
+        Matrix inOut = ws[0].stageIn(in);
 
         for (int layer = 0; layer < numLayers; ++layer) {
-            inOut = layers[layer].feedforward(inOut);
-            inOut = ActivFunc.getActivFuncOf(activFuncType[layer], inOut);
+            inOut = layers[layer].feedforward(inOut, ws[layer], activFuncType[layer]);
         }
 
         int maxNeuron = 0;
 
-        for (int neuron = 1; neuron < inOut.length; ++neuron) {
-            if (inOut[neuron] > inOut[maxNeuron]) {
+        for (int neuron = 1; neuron < inOut.getCols(); ++neuron) {
+            if (inOut.get(0, neuron) > inOut.get(0, maxNeuron)) {
                 maxNeuron = neuron;
             }
         }
         return maxNeuron;
     }
 
-    static Network createNetwork(int[] layerSizes, Loss lossType, ActivFunc[] activFuncType, int numInputs, double learnRate, String inputDataPath, int scaleMethodChoice, double scaleFactor) throws IOException {
+    static Network createNetwork(int[] layerSizes, Loss lossType, ActivFunc[] activFuncType, int numInputs, double learnRate, String inputDataPath, int scaleMethodChoice, double scaleFactor, Precision precision) throws IOException {
         int numLayers = layerSizes.length;
         if (numLayers < 1) {
             System.out.printf("Cannot have < 1 layer (%d) in network\n", numLayers);
@@ -543,7 +1415,7 @@ class Network implements Serializable {
             System.out.printf("Cannot have < 1 input (%d) to network\n", numInputs);
             return null;
         } else {
-            boolean shouldXavInit = scaleMethodChoice == 3;
+            boolean shouldXavInit = scaleMethodChoice >= 3;
             Layer[] layers_init = new Layer[numLayers];
             layers_init[0] = Layer.createLayer(layerSizes[0], numInputs, learnRate, shouldXavInit);
             for (int layer = 1; layer < numLayers; ++layer) {
@@ -559,78 +1431,34 @@ class Network implements Serializable {
             } else if (scaleMethodChoice == 1) {
                 scaler = new Normalizer(scaleFactor);
             } else {
-                if (inputDataFile.exists() && inputDataFile.isDirectory()) {
-                    File[] inputDataSampArr = inputDataFile.listFiles();
-                    int numFiles = inputDataSampArr.length;
-                    if (numFiles == 0) {
+                if (inputDataFile.exists() && !Dataset.isSingleSample(inputDataFile)) {
+                    Dataset dataset = Dataset.open(inputDataFile);
+                    if (dataset.size() == 0) {
                         System.out.println("Dataset has no training samples!");
                         return null;
                     } else {
-                        double mean = findMean(inputDataSampArr);
-                        if (scaleMethodChoice == 3) {
-                            double std = findSTD(mean, inputDataSampArr);
-                            scaler = new Standardizer(mean, std);
+                        DatasetStats stats = DatasetStats.compute(dataset, scaleMethodChoice == 4, Runtime.getRuntime().availableProcessors());
+                        if (scaleMethodChoice == 4) {
+                            scaler = new FeatureStandardizer(stats.getFeatureMeans(), stats.getFeatureStds(), stats.getMean(), stats.getStd());
+                        } else if (scaleMethodChoice == 3) {
+                            scaler = new Standardizer(stats.getMean(), stats.getStd());
                         } else {
-                            scaler = new Centralizer(mean);
+                            scaler = new Centralizer(stats.getMean());
                         }
                     }
                 } else {
-                    System.out.println("Dataset is a file/non-existent!");
+                    System.out.println("Dataset is a single sample/non-existent!");
                     return null;
                 }
             }
-            return new Network(numLayers, layers_init, lossType, activFuncType, inputDataFile, scaler);
+            return new Network(numLayers, layers_init, lossType, activFuncType, inputDataFile, scaler, precision);
         }
     }
 
-    private static double findMean(File ... filePaths) throws IOException {
-        int numFiles = filePaths.length;
-        double temp = 0.0;
-        double avg = 0.0;
-        double total = numFiles * 784;
-
-        for (int file = 0; file < numFiles; ++file) {
-            try (BufferedReader reader = new BufferedReader(new FileReader(filePaths[file]))) {
-                for (int row = 0; row < 28; ++row) {
-                    temp += Arrays.stream(reader.readLine().split("\t")).mapToDouble(Double::parseDouble).sum();
-                }
-            } catch (FileNotFoundException e) {
-                throw new FileNotFoundException(String.format("%s", e.toString()));
-            }
-            System.out.printf("\rCalculating parameters [MEAN] (%d/%d) files", file + 1, numFiles);
-            avg += temp / total;
-            temp = 0.0;
-        }
-        System.out.println("\rCompleted calculation [MEAN]");
-        return avg;
-    }
-
-    private static double findSTD(double mean, File ... filePaths) throws IOException {
-        int numFiles = filePaths.length;
-        double temp = 0.0;
-        double avg = 0.0;
-        double total = numFiles * 784;
-
-        for (int file = 0; file < numFiles; ++file) {
-            try (BufferedReader reader = new BufferedReader(new FileReader(filePaths[file]))) {
-                for (int row = 0; row < 28; ++row) {
-                    temp += Arrays.stream(reader.readLine().split("\t")).mapToDouble(num -> Math.pow(Double.parseDouble(num) - mean, 2)).sum();
-                }
-            } catch (FileNotFoundException e) {
-                throw new FileNotFoundException();
-            }
-            System.out.printf("\rCalculating parameters [STD] (%d/%d) files", file + 1, numFiles);
-            avg += temp / total;
-            temp = 0.0;
-        }
-        System.out.println("\rCompleted calculation [STD]");
-        return Math.sqrt(avg);
-    }
-
     @Override
     public String toString() {
         StringBuilder string = new StringBuilder();
-        string.append(String.format("Learning rate: %.3f\nLoss function: %s\n", layers[0].getLearnRate(), lossType.name()));
+        string.append(String.format("Learning rate: %.3f\nLoss function: %s\nPrecision: %s\n%s\n", layers[0].getLearnRate(), lossType.name(), precision.name(), optimizer));
         switch (scaler.getScaleMethodType()) {
             case "identity":
                 string.append("Scaling Methods: None used!\nParameters of dataset: None calculated\n");
@@ -644,6 +1472,9 @@ class Network implements Serializable {
             case "standardize":
                 string.append(String.format("Scaling Methods: Standardizing\nParameters of dataset: [MEAN = %.6f] [STD = %.6f]\n", scaler.getMean(), scaler.getStd()));
                 break;
+            case "standardize_features":
+                string.append(String.format("Scaling Methods: Standardizing per pixel\nParameters of dataset: [MEAN = %.6f] [STD = %.6f] (over all pixels)\n", scaler.getMean(), scaler.getStd()));
+                break;
             default:
                 break;
         }
@@ -0,0 +1,390 @@
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+enum OptimizerType {
+    SGD,
+    MOMENTUM,
+    NESTEROV,
+    RMSPROP,
+    ADAM,
+    ADAMW
+}
+
+enum LearnRateSchedule {
+    CONSTANT,
+    STEP,
+    EXPONENTIAL,
+    COSINE;
+
+    static double getFactorOf(LearnRateSchedule schedule, int epoch, int scheduleEpochs, double gamma) {
+        switch (schedule) {
+            case CONSTANT:
+                return 1.0;
+            case STEP:
+                return Math.pow(gamma, epoch / scheduleEpochs);
+            case EXPONENTIAL:
+                return Math.pow(gamma, epoch);
+            case COSINE:
+                return 0.5 * (1 + Math.cos(Math.PI * Math.min(epoch, scheduleEpochs) / scheduleEpochs));
+            default:
+                throw new IllegalArgumentException(String.format("Learning rate schedule does not exist / not yet supported!. Please try %s", Arrays.toString(values())));
+        }
+    }
+}
+
+class Optimizer implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    static final double DEFAULT_MOMENTUM = 0.9;
+    static final double DEFAULT_RMS_DECAY = 0.9;
+    static final double DEFAULT_BETA2 = 0.999;
+    static final double DEFAULT_EPSILON = 1e-8;
+    static final double DEFAULT_WEIGHT_DECAY = 0.01;
+    private static final Kernels KERNELS = Kernels.INSTANCE;
+    private static final AtomicLongFieldUpdater<Optimizer> STEP = AtomicLongFieldUpdater.newUpdater(Optimizer.class, "step");
+    private final OptimizerType type;
+    private final double beta1;
+    private final double beta2;
+    private final double epsilon;
+    private final double weightDecay;
+    private final double clipNorm;
+    private final LearnRateSchedule schedule;
+    private final int scheduleEpochs;
+    private final double gamma;
+    private volatile long step;
+    private volatile int epoch;
+    private volatile double[][] firstMoments;
+    private volatile double[][] secondMoments;
+
+    Optimizer(OptimizerType type, double beta1, double beta2, double epsilon, double weightDecay, double clipNorm, LearnRateSchedule schedule, int scheduleEpochs, double gamma) {
+        if (!(beta1 >= 0 && beta1 < 1) || !(beta2 >= 0 && beta2 < 1)) {
+            throw new IllegalArgumentException(String.format("Decay rates should be in range [0, 1) (%f, %f)", beta1, beta2));
+        } else if (!(epsilon > 0)) {
+            throw new IllegalArgumentException(String.format("Epsilon should be > 0 (%f)", epsilon));
+        } else if (!(weightDecay >= 0) || !(clipNorm >= 0)) {
+            throw new IllegalArgumentException(String.format("Weight decay and gradient clipping norm should be >= 0 (%f, %f)", weightDecay, clipNorm));
+        } else if (schedule != LearnRateSchedule.CONSTANT && scheduleEpochs < 1) {
+            throw new IllegalArgumentException(String.format("Cannot schedule the learning rate over < 1 epoch (%d)", scheduleEpochs));
+        } else if (!(gamma > 0 && gamma <= 1)) {
+            throw new IllegalArgumentException(String.format("Learning rate decay should be in range (0, 1] (%f)", gamma));
+        }
+        this.type = type;
+        this.beta1 = beta1;
+        this.beta2 = beta2;
+        this.epsilon = epsilon;
+        this.weightDecay = weightDecay;
+        this.clipNorm = clipNorm;
+        this.schedule = schedule;
+        this.scheduleEpochs = scheduleEpochs;
+        this.gamma = gamma;
+    }
+
+    static Optimizer createOptimizer(OptimizerType type) {
+        return createOptimizer(type, type == OptimizerType.ADAMW ? DEFAULT_WEIGHT_DECAY : 0.0, 0.0, LearnRateSchedule.CONSTANT, 1, 1.0);
+    }
+
+    static Optimizer createOptimizer(OptimizerType type, double weightDecay, double clipNorm, LearnRateSchedule schedule, int scheduleEpochs, double gamma) {
+        double beta1 = (type == OptimizerType.SGD || type == OptimizerType.RMSPROP) ? 0.0 : DEFAULT_MOMENTUM;
+        double beta2 = type == OptimizerType.RMSPROP ? DEFAULT_RMS_DECAY : DEFAULT_BETA2;
+        return new Optimizer(type, beta1, beta2, DEFAULT_EPSILON, weightDecay, clipNorm, schedule, scheduleEpochs, gamma);
+    }
+
+    OptimizerType getType() {
+        return type;
+    }
+
+    double getBeta1() {
+        return beta1;
+    }
+
+    double getBeta2() {
+        return beta2;
+    }
+
+    double getEpsilon() {
+        return epsilon;
+    }
+
+    double getWeightDecay() {
+        return weightDecay;
+    }
+
+    double getClipNorm() {
+        return clipNorm;
+    }
+
+    LearnRateSchedule getSchedule() {
+        return schedule;
+    }
+
+    int getScheduleEpochs() {
+        return scheduleEpochs;
+    }
+
+    double getGamma() {
+        return gamma;
+    }
+
+    long getStep() {
+        return step;
+    }
+
+    int getEpoch() {
+        return epoch;
+    }
+
+    void setEpoch(int epoch) {
+        this.epoch = epoch;
+    }
+
+    double[][] getFirstMoments() {
+        return firstMoments;
+    }
+
+    double[][] getSecondMoments() {
+        return secondMoments;
+    }
+
+    void restoreState(long step, int epoch, double[][] firstMoments, double[][] secondMoments) {
+        this.step = step;
+        this.epoch = epoch;
+        this.firstMoments = firstMoments;
+        this.secondMoments = secondMoments;
+    }
+
+    synchronized Optimizer copy() {
+        Optimizer res = new Optimizer(type, beta1, beta2, epsilon, weightDecay, clipNorm, schedule, scheduleEpochs, gamma);
+        res.restoreState(step, epoch, copyMoments(firstMoments), copyMoments(secondMoments));
+        return res;
+    }
+
+    private static double[][] copyMoments(double[][] moments) {
+        if (moments == null) {
+            return null;
+        }
+        double[][] res = new double[moments.length][];
+        for (int layer = 0; layer < moments.length; ++layer) {
+            res[layer] = moments[layer] == null ? null : moments[layer].clone();
+        }
+        return res;
+    }
+
+    boolean usesFirstMoments() {
+        return type == OptimizerType.MOMENTUM || type == OptimizerType.NESTEROV || type == OptimizerType.ADAM || type == OptimizerType.ADAMW;
+    }
+
+    boolean usesSecondMoments() {
+        return type == OptimizerType.RMSPROP || type == OptimizerType.ADAM || type == OptimizerType.ADAMW;
+    }
+
+    static int getStateSize(Layer layer) {
+        return layer.getNumWeights() * layer.getNumNeurons() + layer.getNumNeurons();
+    }
+
+    double getLearnRateFactor() {
+        return LearnRateSchedule.getFactorOf(schedule, epoch, scheduleEpochs, gamma);
+    }
+
+    void apply(Layer[] layers, LayerWorkspace[] ws) {
+        if (!hasState(layers)) {
+            allocateState(layers);
+        }
+        double[][] first = firstMoments;
+        double[][] second = secondMoments;
+        long t = STEP.incrementAndGet(this);
+        double factor = getLearnRateFactor();
+        double gradScale = 1.0;
+        if (clipNorm > 0) {
+            double norm = Math.sqrt(getSquaredNormOf(ws));
+            gradScale = norm > clipNorm ? clipNorm / norm : 1.0;
+        }
+        double bias1 = 1 - Math.pow(beta1, t);
+        double bias2 = 1 - Math.pow(beta2, t);
+        for (int layer = 0; layer < layers.length; ++layer) {
+            apply(layers[layer], ws[layer], first[layer], second[layer], factor * layers[layer].getLearnRate(), gradScale, bias1, bias2);
+        }
+    }
+
+    private boolean hasState(Layer[] layers) {
+        double[][] first = firstMoments;
+        double[][] second = secondMoments;
+        if (first == null || second == null || first.length != layers.length || second.length != layers.length) {
+            return false;
+        }
+        for (int layer = 0; layer < layers.length; ++layer) {
+            int size = getStateSize(layers[layer]);
+            if ((usesFirstMoments() && (first[layer] == null || first[layer].length != size)) || (usesSecondMoments() && (second[layer] == null || second[layer].length != size))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private synchronized void allocateState(Layer[] layers) {
+        if (hasState(layers)) {
+            return;
+        }
+        double[][] first = new double[layers.length][];
+        double[][] second = new double[layers.length][];
+        for (int layer = 0; layer < layers.length; ++layer) {
+            int size = getStateSize(layers[layer]);
+            if (usesFirstMoments()) {
+                first[layer] = firstMoments != null && layer < firstMoments.length && firstMoments[layer] != null && firstMoments[layer].length == size ? firstMoments[layer] : new double[size];
+            }
+            if (usesSecondMoments()) {
+                second[layer] = secondMoments != null && layer < secondMoments.length && secondMoments[layer] != null && secondMoments[layer].length == size ? secondMoments[layer] : new double[size];
+            }
+        }
+        secondMoments = second;
+        firstMoments = first;
+    }
+
+    private static double getSquaredNormOf(LayerWorkspace[] ws) {
+        double res = 0.0;
+        for (LayerWorkspace layerWs : ws) {
+            Matrix dEdW = layerWs.dEdW;
+            int num = dEdW.getRows() * dEdW.getCols();
+            res += dEdW.isFloat() ? KERNELS.dot(dEdW.getFloatData(), 0, dEdW.getFloatData(), 0, num) : KERNELS.dot(dEdW.getData(), 0, dEdW.getData(), 0, num);
+            res += KERNELS.dot(layerWs.dEdB, 0, layerWs.dEdB, 0, layerWs.dEdB.length);
+        }
+        return res;
+    }
+
+    private void apply(Layer params, LayerWorkspace ws, double[] first, double[] second, double learnRate, double gradScale, double bias1, double bias2) {
+        Matrix W = params.getW();
+        double[] B = params.getB();
+        if (type == OptimizerType.SGD && weightDecay == 0) {
+            Matrix.axpy(-learnRate * gradScale, ws.dEdW, W);
+            Matrix.axpy(-learnRate * gradScale, ws.dEdB, B);
+            return;
+        }
+        int numWeights = W.getRows() * W.getCols();
+        if (W.isFloat()) {
+            update(W.getFloatData(), ws.dEdW.getFloatData(), numWeights, first, second, learnRate, gradScale, weightDecay, bias1, bias2);
+        } else {
+            update(W.getData(), ws.dEdW.getData(), 0, numWeights, first, second, learnRate, gradScale, weightDecay, bias1, bias2);
+        }
+        update(B, ws.dEdB, numWeights, B.length, first, second, learnRate, gradScale, 0.0, bias1, bias2);
+    }
+
+    private void update(double[] params, double[] grads, int stateOffset, int num, double[] first, double[] second, double learnRate, double gradScale, double decay, double bias1, double bias2) {
+        switch (type) {
+            case SGD:
+                for (int elem = 0; elem < num; ++elem) {
+                    double grad = grads[elem] * gradScale + decay * params[elem];
+                    params[elem] = params[elem] - learnRate * grad;
+                }
+                break;
+            case MOMENTUM:
+                for (int elem = 0; elem < num; ++elem) {
+                    int index = stateOffset + elem;
+                    double grad = grads[elem] * gradScale + decay * params[elem];
+                    first[index] = beta1 * first[index] + grad;
+                    params[elem] = params[elem] - learnRate * first[index];
+                }
+                break;
+            case NESTEROV:
+                for (int elem = 0; elem < num; ++elem) {
+                    int index = stateOffset + elem;
+                    double grad = grads[elem] * gradScale + decay * params[elem];
+                    first[index] = beta1 * first[index] + grad;
+                    params[elem] = params[elem] - learnRate * (grad + beta1 * first[index]);
+                }
+                break;
+            case RMSPROP:
+                for (int elem = 0; elem < num; ++elem) {
+                    int index = stateOffset + elem;
+                    double grad = grads[elem] * gradScale + decay * params[elem];
+                    second[index] = beta2 * second[index] + (1 - beta2) * grad * grad;
+                    params[elem] = params[elem] - learnRate * grad / (Math.sqrt(second[index]) + epsilon);
+                }
+                break;
+            case ADAM:
+                for (int elem = 0; elem < num; ++elem) {
+                    int index = stateOffset + elem;
+                    double grad = grads[elem] * gradScale + decay * params[elem];
+                    first[index] = beta1 * first[index] + (1 - beta1) * grad;
+                    second[index] = beta2 * second[index] + (1 - beta2) * grad * grad;
+                    params[elem] = params[elem] - learnRate * ((first[index] / bias1) / (Math.sqrt(second[index] / bias2) + epsilon));
+                }
+                break;
+            case ADAMW:
+                for (int elem = 0; elem < num; ++elem) {
+                    int index = stateOffset + elem;
+                    double grad = grads[elem] * gradScale;
+                    first[index] = beta1 * first[index] + (1 - beta1) * grad;
+                    second[index] = beta2 * second[index] + (1 - beta2) * grad * grad;
+                    params[elem] = params[elem] - learnRate * ((first[index] / bias1) / (Math.sqrt(second[index] / bias2) + epsilon) + decay * params[elem]);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException(String.format("Optimizer does not exist / not yet supported!. Please try %s", Arrays.toString(OptimizerType.values())));
+        }
+    }
+
+    private void update(float[] params, float[] grads, int num, double[] first, double[] second, double learnRate, double gradScale, double decay, double bias1, double bias2) {
+        switch (type) {
+            case SGD:
+                for (int elem = 0; elem < num; ++elem) {
+                    double grad = grads[elem] * gradScale + decay * params[elem];
+                    params[elem] = (float) (params[elem] - learnRate * grad);
+                }
+                break;
+            case MOMENTUM:
+                for (int elem = 0; elem < num; ++elem) {
+                    double grad = grads[elem] * gradScale + decay * params[elem];
+                    first[elem] = beta1 * first[elem] + grad;
+                    params[elem] = (float) (params[elem] - learnRate * first[elem]);
+                }
+                break;
+            case NESTEROV:
+                for (int elem = 0; elem < num; ++elem) {
+                    double grad = grads[elem] * gradScale + decay * params[elem];
+                    first[elem] = beta1 * first[elem] + grad;
+                    params[elem] = (float) (params[elem] - learnRate * (grad + beta1 * first[elem]));
+                }
+                break;
+            case RMSPROP:
+                for (int elem = 0; elem < num; ++elem) {
+                    double grad = grads[elem] * gradScale + decay * params[elem];
+                    second[elem] = beta2 * second[elem] + (1 - beta2) * grad * grad;
+                    params[elem] = (float) (params[elem] - learnRate * grad / (Math.sqrt(second[elem]) + epsilon));
+                }
+                break;
+            case ADAM:
+                for (int elem = 0; elem < num; ++elem) {
+                    double grad = grads[elem] * gradScale + decay * params[elem];
+                    first[elem] = beta1 * first[elem] + (1 - beta1) * grad;
+                    second[elem] = beta2 * second[elem] + (1 - beta2) * grad * grad;
+                    params[elem] = (float) (params[elem] - learnRate * ((first[elem] / bias1) / (Math.sqrt(second[elem] / bias2) + epsilon)));
+                }
+                break;
+            case ADAMW:
+                for (int elem = 0; elem < num; ++elem) {
+                    double grad = grads[elem] * gradScale;
+                    first[elem] = beta1 * first[elem] + (1 - beta1) * grad;
+                    second[elem] = beta2 * second[elem] + (1 - beta2) * grad * grad;
+                    params[elem] = (float) (params[elem] - learnRate * ((first[elem] / bias1) / (Math.sqrt(second[elem] / bias2) + epsilon) + decay * params[elem]));
+                }
+                break;
+            default:
+                throw new IllegalArgumentException(String.format("Optimizer does not exist / not yet supported!. Please try %s", Arrays.toString(OptimizerType.values())));
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder string = new StringBuilder(String.format("Optimizer: %s (step %d, epoch %d)\nLearning rate schedule: %s", type.name(), step, epoch, schedule.name()));
+        if (schedule != LearnRateSchedule.CONSTANT) {
+            string.append(String.format(" over %d epochs (decay %.3f, current factor %.4f)", scheduleEpochs, gamma, getLearnRateFactor()));
+        }
+        if (weightDecay > 0) {
+            string.append(String.format("\nWeight decay: %f", weightDecay));
+        }
+        if (clipNorm > 0) {
+            string.append(String.format("\nGradient clipping norm: %f", clipNorm));
+        }
+        return string.toString();
+    }
+}
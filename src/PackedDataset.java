@@ -0,0 +1,126 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+class PackedDataset implements Dataset {
+
+    static final int MAGIC = 0x44474954;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 20;
+    private final int numSamples;
+    private final int numRows;
+    private final int numCols;
+    private final int recordSize;
+    private final int recordsPerChunk;
+    private final MappedByteBuffer[] chunks;
+
+    PackedDataset(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+            if (header.getInt() != MAGIC) {
+                throw new IOException(String.format("%s is not a packed dataset!", file));
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException(String.format("Packed dataset version %d not supported! (expected %d)", version, VERSION));
+            }
+            numSamples = header.getInt();
+            numRows = header.getInt();
+            numCols = header.getInt();
+            recordSize = numRows * numCols + 1;
+            if ((long) numSamples * recordSize + HEADER_SIZE != channel.size()) {
+                throw new IOException(String.format("Packed dataset %s is truncated/corrupt! (%d samples of %d bytes, file size %d)", file, numSamples, recordSize, channel.size()));
+            }
+            recordsPerChunk = Integer.MAX_VALUE / recordSize;
+            int numChunks = Math.max(1, (numSamples + recordsPerChunk - 1) / recordsPerChunk);
+            chunks = new MappedByteBuffer[numChunks];
+            for (int chunk = 0; chunk < numChunks; ++chunk) {
+                long start = HEADER_SIZE + (long) chunk * recordsPerChunk * recordSize;
+                long length = (long) Math.min(recordsPerChunk, numSamples - chunk * recordsPerChunk) * recordSize;
+                chunks[chunk] = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return numSamples;
+    }
+
+    @Override
+    public int getNumFeatures() {
+        return numRows * numCols;
+    }
+
+    @Override
+    public int readSample(int index, double[] in, int offset) {
+        MappedByteBuffer chunk = chunks[index / recordsPerChunk];
+        int base = (index % recordsPerChunk) * recordSize;
+        int numFeatures = recordSize - 1;
+        for (int elem = 0; elem < numFeatures; ++elem) {
+            in[offset + elem] = chunk.get(base + elem) & 0xFF;
+        }
+        return chunk.get(base + numFeatures) & 0xFF;
+    }
+
+    @Override
+    public int readScaledSample(int index, double[] in, int offset, Scaler scaler) {
+        MappedByteBuffer chunk = chunks[index / recordsPerChunk];
+        int base = (index % recordsPerChunk) * recordSize;
+        int numFeatures = recordSize - 1;
+        double[] multipliers = scaler.getMultipliers(numFeatures);
+        double[] offsets = scaler.getOffsets(numFeatures);
+        for (int elem = 0; elem < numFeatures; ++elem) {
+            in[offset + elem] = (chunk.get(base + elem) & 0xFF) * multipliers[elem] + offsets[elem];
+        }
+        return chunk.get(base + numFeatures) & 0xFF;
+    }
+
+    static boolean isPacked(File file) throws IOException {
+        if (!file.isFile() || file.length() < HEADER_SIZE) {
+            return false;
+        }
+        try (DataInputStream dis = new DataInputStream(new FileInputStream(file))) {
+            return dis.readInt() == MAGIC;
+        }
+    }
+
+    static void write(Dataset dataset, int numRows, int numCols, File file) throws IOException {
+        int numSamples = dataset.size();
+        int numFeatures = dataset.getNumFeatures();
+        if (numRows * numCols != numFeatures) {
+            throw new IllegalArgumentException(String.format("Cannot pack samples of %d features as %dx%d images", numFeatures, numRows, numCols));
+        }
+        double[] in = new double[numFeatures];
+        byte[] record = new byte[numFeatures + 1];
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            dos.writeInt(numSamples);
+            dos.writeInt(numRows);
+            dos.writeInt(numCols);
+            for (int sample = 0; sample < numSamples; ++sample) {
+                int ans = dataset.readSample(sample, in, 0);
+                for (int elem = 0; elem < numFeatures; ++elem) {
+                    record[elem] = toUnsignedByte(in[elem], "pixel", sample);
+                }
+                record[numFeatures] = toUnsignedByte(ans, "label", sample);
+                dos.write(record);
+                if ((sample + 1) % 1000 == 0 || sample + 1 == numSamples) {
+                    System.out.printf("\rPacking dataset (%d/%d) samples", sample + 1, numSamples);
+                }
+            }
+        }
+        System.out.println("\rCompleted packing dataset");
+    }
+
+    private static byte toUnsignedByte(double val, String what, int sample) {
+        if (val < 0 || val > 255 || val != Math.rint(val)) {
+            throw new IllegalArgumentException(String.format("Cannot pack %s value %f of sample #%d as uint8", what, val, sample));
+        }
+        return (byte) val;
+    }
+}
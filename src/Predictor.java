@@ -0,0 +1,260 @@
+interface InferenceEngine {
+
+    int getNumInputs();
+
+    int getNumOutputs();
+
+    int predict(float[] in);
+
+    double[] predictProbabilities(float[] in);
+
+    default Prediction[] predictTopK(float[] in, int k) {
+        return Prediction.topK(predictProbabilities(in), k);
+    }
+
+    int[] predictBatch(float[][] in);
+
+    double[][] predictProbabilitiesBatch(float[][] in);
+}
+
+final class Predictor implements InferenceEngine {
+
+    static final int MAX_BATCH = 256;
+    private final Matrix[] weights;
+    private final MappedMatrix[] mappedWeights;
+    private final double[][] biases;
+    private final ActivFunc[] activFuncs;
+    private final double[] multipliers;
+    private final double[] offsets;
+    private final int[] widths;
+    private final Precision precision;
+    private final ThreadLocal<PredictorScratch> scratch;
+
+    Predictor(Layer[] layers, ActivFunc[] activFuncs, Scaler scaler) {
+        int numLayers = layers.length;
+        if (numLayers < 1 || activFuncs.length != numLayers) {
+            throw new IllegalArgumentException(String.format("Cannot predict with %d layers and %d activation functions", numLayers, activFuncs.length));
+        }
+        this.weights = new Matrix[numLayers];
+        this.biases = new double[numLayers][];
+        this.widths = new int[numLayers + 1];
+        widths[0] = layers[0].getNumWeights();
+        for (int layer = 0; layer < numLayers; ++layer) {
+            if (layers[layer].getNumWeights() != widths[layer]) {
+                throw new IllegalArgumentException(String.format("Layer %d takes %d inputs but receives %d", layer + 1, layers[layer].getNumWeights(), widths[layer]));
+            }
+            weights[layer] = layers[layer].getW().copy();
+            biases[layer] = layers[layer].getB().clone();
+            widths[layer + 1] = layers[layer].getNumNeurons();
+        }
+        this.mappedWeights = null;
+        this.activFuncs = activFuncs.clone();
+        this.multipliers = scaler.getMultipliers(widths[0]).clone();
+        this.offsets = scaler.getOffsets(widths[0]).clone();
+        this.precision = layers[0].getPrecision();
+        this.scratch = ThreadLocal.withInitial(() -> new PredictorScratch(widths, 1, precision));
+    }
+
+    Predictor(MappedMatrix[] mappedWeights, double[][] biases, ActivFunc[] activFuncs, Scaler scaler) {
+        int numLayers = mappedWeights.length;
+        if (numLayers < 1 || activFuncs.length != numLayers || biases.length != numLayers) {
+            throw new IllegalArgumentException(String.format("Cannot predict with %d layers and %d activation functions", numLayers, activFuncs.length));
+        }
+        this.weights = null;
+        this.mappedWeights = mappedWeights.clone();
+        this.biases = new double[numLayers][];
+        this.widths = new int[numLayers + 1];
+        this.precision = mappedWeights[0].getPrecision();
+        widths[0] = mappedWeights[0].getRows();
+        for (int layer = 0; layer < numLayers; ++layer) {
+            if (mappedWeights[layer].getRows() != widths[layer]) {
+                throw new IllegalArgumentException(String.format("Layer %d takes %d inputs but receives %d", layer + 1, mappedWeights[layer].getRows(), widths[layer]));
+            } else if (mappedWeights[layer].getPrecision() != precision || biases[layer].length != mappedWeights[layer].getCols()) {
+                throw new IllegalArgumentException(String.format("Layer %d has %s weights for %d neurons and %d biases", layer + 1, mappedWeights[layer].getPrecision(), mappedWeights[layer].getCols(), biases[layer].length));
+            }
+            this.biases[layer] = biases[layer].clone();
+            widths[layer + 1] = mappedWeights[layer].getCols();
+        }
+        this.activFuncs = activFuncs.clone();
+        this.multipliers = scaler.getMultipliers(widths[0]).clone();
+        this.offsets = scaler.getOffsets(widths[0]).clone();
+        this.scratch = ThreadLocal.withInitial(() -> new PredictorScratch(widths, 1, precision));
+    }
+
+    boolean isMapped() {
+        return mappedWeights != null;
+    }
+
+    @Override
+    public int getNumInputs() {
+        return widths[0];
+    }
+
+    @Override
+    public int getNumOutputs() {
+        return widths[widths.length - 1];
+    }
+
+    @Override
+    public int predict(float[] in) {
+        PredictorScratch ws = scratch.get();
+        loadSample(in, ws.input, 0);
+        return argMax(forward(ws, 1), 0);
+    }
+
+    @Override
+    public double[] predictProbabilities(float[] in) {
+        PredictorScratch ws = scratch.get();
+        loadSample(in, ws.input, 0);
+        Matrix out = forward(ws, 1);
+        double[] probs = new double[out.getCols()];
+        copyRow(out, 0, probs);
+        return probs;
+    }
+
+    @Override
+    public int[] predictBatch(float[][] in) {
+        int[] preds = new int[in.length];
+        for (int start = 0; start < in.length; start += MAX_BATCH) {
+            int batchSize = Math.min(MAX_BATCH, in.length - start);
+            Matrix out = forwardBatch(in, start, batchSize);
+            for (int sample = 0; sample < batchSize; ++sample) {
+                preds[start + sample] = argMax(out, sample);
+            }
+        }
+        return preds;
+    }
+
+    @Override
+    public double[][] predictProbabilitiesBatch(float[][] in) {
+        double[][] probs = new double[in.length][getNumOutputs()];
+        for (int start = 0; start < in.length; start += MAX_BATCH) {
+            int batchSize = Math.min(MAX_BATCH, in.length - start);
+            Matrix out = forwardBatch(in, start, batchSize);
+            for (int sample = 0; sample < batchSize; ++sample) {
+                copyRow(out, sample, probs[start + sample]);
+            }
+        }
+        return probs;
+    }
+
+    private Matrix forwardBatch(float[][] in, int start, int batchSize) {
+        PredictorScratch ws = scratch.get();
+        if (ws.getBatchCapacity() < batchSize) {
+            ws = new PredictorScratch(widths, batchSize, precision);
+            scratch.set(ws);
+        }
+        for (int sample = 0; sample < batchSize; ++sample) {
+            loadSample(in[start + sample], ws.input, sample);
+        }
+        return forward(ws, batchSize);
+    }
+
+    private void loadSample(float[] sample, Matrix input, int row) {
+        int numInputs = widths[0];
+        if (sample.length != numInputs) {
+            throw new IllegalArgumentException(String.format("Sample has %d features but the network takes %d inputs", sample.length, numInputs));
+        }
+        int base = input.indexOf(row, 0);
+        if (input.isFloat()) {
+            float[] data = input.getFloatData();
+            for (int elem = 0; elem < numInputs; ++elem) {
+                data[base + elem] = (float) (sample[elem] * multipliers[elem] + offsets[elem]);
+            }
+        } else {
+            double[] data = input.getData();
+            for (int elem = 0; elem < numInputs; ++elem) {
+                data[base + elem] = sample[elem] * multipliers[elem] + offsets[elem];
+            }
+        }
+    }
+
+    private static void copyRow(Matrix out, int row, double[] res) {
+        for (int col = 0; col < res.length; ++col) {
+            res[col] = out.get(row, col);
+        }
+    }
+
+    private Matrix forward(PredictorScratch ws, int batchSize) {
+        Matrix inOut = batchSize == 1 ? ws.singleInput : ws.input.topRows(batchSize);
+        for (int layer = 0; layer < activFuncs.length; ++layer) {
+            Matrix out = batchSize == 1 ? ws.singleOutputs[layer] : ws.outputs[layer].topRows(batchSize);
+            if (mappedWeights != null) {
+                Matrix.gemm(inOut, mappedWeights[layer], biases[layer], out);
+            } else {
+                Matrix.gemm(inOut, weights[layer], biases[layer], out);
+            }
+            ActivFunc.getActivFuncOf(activFuncs[layer], out, out);
+            inOut = out;
+        }
+        return inOut;
+    }
+
+    private static int argMax(Matrix out, int row) {
+        int maxNeuron = 0;
+        for (int neuron = 1; neuron < out.getCols(); ++neuron) {
+            if (out.get(row, neuron) > out.get(row, maxNeuron)) {
+                maxNeuron = neuron;
+            }
+        }
+        return maxNeuron;
+    }
+}
+
+final class Prediction {
+
+    final int label;
+    final double probability;
+
+    Prediction(int label, double probability) {
+        this.label = label;
+        this.probability = probability;
+    }
+
+    static Prediction[] topK(double[] probs, int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException(String.format("Cannot return the top %d predictions", k));
+        }
+        Prediction[] top = new Prediction[Math.min(k, probs.length)];
+        boolean[] taken = new boolean[probs.length];
+        for (int rank = 0; rank < top.length; ++rank) {
+            int best = -1;
+            for (int neuron = 0; neuron < probs.length; ++neuron) {
+                if (!taken[neuron] && (best < 0 || probs[neuron] > probs[best])) {
+                    best = neuron;
+                }
+            }
+            taken[best] = true;
+            top[rank] = new Prediction(best, probs[best]);
+        }
+        return top;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d (%.4f)", label, probability);
+    }
+}
+
+class PredictorScratch {
+
+    final Matrix input;
+    final Matrix[] outputs;
+    final Matrix singleInput;
+    final Matrix[] singleOutputs;
+
+    PredictorScratch(int[] widths, int batchCapacity, Precision precision) {
+        this.input = new Matrix(batchCapacity, widths[0], precision);
+        this.singleInput = input.topRows(1);
+        this.outputs = new Matrix[widths.length - 1];
+        this.singleOutputs = new Matrix[widths.length - 1];
+        for (int layer = 0; layer < outputs.length; ++layer) {
+            outputs[layer] = new Matrix(batchCapacity, widths[layer + 1], precision);
+            singleOutputs[layer] = outputs[layer].topRows(1);
+        }
+    }
+
+    int getBatchCapacity() {
+        return input.getRows();
+    }
+}
@@ -0,0 +1,214 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+
+final class QuantizedPredictor implements InferenceEngine, Serializable {
+
+    private static final long serialVersionUID = 1L;
+    static final int QUANT_MIN = -128;
+    static final int QUANT_MAX = 127;
+    private static final Kernels KERNELS = Kernels.INSTANCE;
+    private final byte[][] weights;
+    private final double[][] weightScales;
+    private final int[][] weightSums;
+    private final double[][] biases;
+    private final double[] inputScales;
+    private final int[] inputZeroPoints;
+    private final ActivFunc[] activFuncs;
+    private final double[] multipliers;
+    private final double[] offsets;
+    private final int[] widths;
+    private transient ThreadLocal<QuantizedScratch> scratch;
+
+    QuantizedPredictor(Layer[] layers, ActivFunc[] activFuncs, Scaler scaler, double[] rangeMins, double[] rangeMaxs) {
+        int numLayers = layers.length;
+        if (numLayers < 1 || activFuncs.length != numLayers) {
+            throw new IllegalArgumentException(String.format("Cannot predict with %d layers and %d activation functions", numLayers, activFuncs.length));
+        } else if (rangeMins.length != numLayers || rangeMaxs.length != numLayers) {
+            throw new IllegalArgumentException(String.format("Cannot quantize %d layers with %d calibrated input ranges", numLayers, Math.min(rangeMins.length, rangeMaxs.length)));
+        }
+        this.weights = new byte[numLayers][];
+        this.weightScales = new double[numLayers][];
+        this.weightSums = new int[numLayers][];
+        this.biases = new double[numLayers][];
+        this.inputScales = new double[numLayers];
+        this.inputZeroPoints = new int[numLayers];
+        this.widths = new int[numLayers + 1];
+        widths[0] = layers[0].getNumWeights();
+        for (int layer = 0; layer < numLayers; ++layer) {
+            if (layers[layer].getNumWeights() != widths[layer]) {
+                throw new IllegalArgumentException(String.format("Layer %d takes %d inputs but receives %d", layer + 1, layers[layer].getNumWeights(), widths[layer]));
+            }
+            widths[layer + 1] = layers[layer].getNumNeurons();
+            quantizeWeights(layers[layer].getW(), layer);
+            biases[layer] = layers[layer].getB().clone();
+            double min = Math.min(0.0, rangeMins[layer]);
+            double max = Math.max(0.0, rangeMaxs[layer]);
+            inputScales[layer] = max > min ? (max - min) / (QUANT_MAX - QUANT_MIN) : 1.0;
+            inputZeroPoints[layer] = clamp(QUANT_MIN - Math.round(min / inputScales[layer]));
+        }
+        this.activFuncs = activFuncs.clone();
+        this.multipliers = scaler.getMultipliers(widths[0]).clone();
+        this.offsets = scaler.getOffsets(widths[0]).clone();
+        this.scratch = ThreadLocal.withInitial(() -> new QuantizedScratch(widths));
+    }
+
+    private void quantizeWeights(Matrix W, int layer) {
+        int numIn = widths[layer];
+        int numOut = widths[layer + 1];
+        weights[layer] = new byte[numOut * numIn];
+        weightScales[layer] = new double[numOut];
+        weightSums[layer] = new int[numOut];
+        for (int neuron = 0; neuron < numOut; ++neuron) {
+            double maxAbs = 0.0;
+            for (int in = 0; in < numIn; ++in) {
+                maxAbs = Math.max(maxAbs, Math.abs(W.get(in, neuron)));
+            }
+            double scale = maxAbs > 0 ? maxAbs / QUANT_MAX : 1.0;
+            int base = neuron * numIn;
+            for (int in = 0; in < numIn; ++in) {
+                int quant = clamp(Math.round(W.get(in, neuron) / scale));
+                weights[layer][base + in] = (byte) quant;
+                weightSums[layer][neuron] += quant;
+            }
+            weightScales[layer][neuron] = scale;
+        }
+    }
+
+    private static int clamp(long val) {
+        return (int) Math.max(QUANT_MIN, Math.min(QUANT_MAX, val));
+    }
+
+    @Override
+    public int getNumInputs() {
+        return widths[0];
+    }
+
+    @Override
+    public int getNumOutputs() {
+        return widths[widths.length - 1];
+    }
+
+    @Override
+    public int predict(float[] in) {
+        return argMax(forward(scratch.get(), in));
+    }
+
+    @Override
+    public double[] predictProbabilities(float[] in) {
+        return forward(scratch.get(), in).clone();
+    }
+
+    @Override
+    public int[] predictBatch(float[][] in) {
+        QuantizedScratch ws = scratch.get();
+        int[] preds = new int[in.length];
+        for (int sample = 0; sample < in.length; ++sample) {
+            preds[sample] = argMax(forward(ws, in[sample]));
+        }
+        return preds;
+    }
+
+    @Override
+    public double[][] predictProbabilitiesBatch(float[][] in) {
+        QuantizedScratch ws = scratch.get();
+        double[][] probs = new double[in.length][];
+        for (int sample = 0; sample < in.length; ++sample) {
+            probs[sample] = forward(ws, in[sample]).clone();
+        }
+        return probs;
+    }
+
+    private void loadSample(float[] sample, byte[] res) {
+        int numInputs = widths[0];
+        if (sample.length != numInputs) {
+            throw new IllegalArgumentException(String.format("Sample has %d features but the network takes %d inputs", sample.length, numInputs));
+        }
+        double invScale = 1.0 / inputScales[0];
+        int zeroPoint = inputZeroPoints[0];
+        for (int elem = 0; elem < numInputs; ++elem) {
+            res[elem] = (byte) clamp(Math.round((sample[elem] * multipliers[elem] + offsets[elem]) * invScale) + zeroPoint);
+        }
+    }
+
+    private double[] forward(QuantizedScratch ws, float[] sample) {
+        loadSample(sample, ws.inputs[0]);
+        double[] out = null;
+        for (int layer = 0; layer < weights.length; ++layer) {
+            byte[] in = ws.inputs[layer];
+            byte[] W = weights[layer];
+            int[] acc = ws.acc;
+            int numIn = widths[layer];
+            int numOut = widths[layer + 1];
+            out = ws.outputs[layer];
+            int neuron = 0;
+            for (; neuron + 3 < numOut; neuron += 4) {
+                int base = neuron * numIn;
+                KERNELS.dot4(W, base, base + numIn, base + 2 * numIn, base + 3 * numIn, in, 0, numIn, acc, neuron);
+            }
+            for (; neuron < numOut; ++neuron) {
+                acc[neuron] = KERNELS.dot(W, neuron * numIn, in, 0, numIn);
+            }
+            dequantize(layer, acc, out);
+            if (layer + 1 < weights.length) {
+                requantize(out, layer + 1, ws.inputs[layer + 1]);
+            }
+        }
+        return out;
+    }
+
+    private void dequantize(int layer, int[] acc, double[] res) {
+        double inScale = inputScales[layer];
+        int zeroPoint = inputZeroPoints[layer];
+        double[] scales = weightScales[layer];
+        int[] sums = weightSums[layer];
+        double[] bias = biases[layer];
+        for (int neuron = 0; neuron < res.length; ++neuron) {
+            res[neuron] = (acc[neuron] - zeroPoint * sums[neuron]) * (scales[neuron] * inScale) + bias[neuron];
+        }
+        ActivFunc.getActivFuncOf(activFuncs[layer], res, res);
+    }
+
+    private void requantize(double[] in, int layer, byte[] res) {
+        double invScale = 1.0 / inputScales[layer];
+        int zeroPoint = inputZeroPoints[layer];
+        for (int elem = 0; elem < in.length; ++elem) {
+            res[elem] = (byte) clamp(Math.round(in[elem] * invScale) + zeroPoint);
+        }
+    }
+
+    private static int argMax(double[] out) {
+        int maxNeuron = 0;
+        for (int neuron = 1; neuron < out.length; ++neuron) {
+            if (out[neuron] > out[maxNeuron]) {
+                maxNeuron = neuron;
+            }
+        }
+        return maxNeuron;
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        scratch = ThreadLocal.withInitial(() -> new QuantizedScratch(widths));
+    }
+}
+
+class QuantizedScratch {
+
+    final byte[][] inputs;
+    final double[][] outputs;
+    final int[] acc;
+
+    QuantizedScratch(int[] widths) {
+        int numLayers = widths.length - 1;
+        this.inputs = new byte[numLayers][];
+        this.outputs = new double[numLayers][];
+        int maxWidth = 0;
+        for (int layer = 0; layer < numLayers; ++layer) {
+            inputs[layer] = new byte[widths[layer]];
+            outputs[layer] = new double[widths[layer + 1]];
+            maxWidth = Math.max(maxWidth, widths[layer + 1]);
+        }
+        this.acc = new int[maxWidth];
+    }
+}
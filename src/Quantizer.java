@@ -0,0 +1,109 @@
+import java.io.File;
+import java.io.IOException;
+
+class Quantizer {
+
+    static final long CALIBRATION_SEED = 42;
+    static final int LATENCY_WARMUP_ROUNDS = 3;
+
+    static double accuracy(int[] preds, int[] labels) {
+        int numCorrect = 0;
+        for (int sample = 0; sample < preds.length; ++sample) {
+            if (preds[sample] == labels[sample]) {
+                ++numCorrect;
+            }
+        }
+        return numCorrect * 100.0 / preds.length;
+    }
+
+    static double measureLatencyMicros(InferenceEngine engine, float[][] in) {
+        long checksum = 0;
+        for (int round = 0; round < LATENCY_WARMUP_ROUNDS; ++round) {
+            for (float[] sample : in) {
+                checksum += engine.predict(sample);
+            }
+        }
+        long start = System.nanoTime();
+        for (float[] sample : in) {
+            checksum += engine.predict(sample);
+        }
+        long elapsed = System.nanoTime() - start;
+        if (checksum < 0) {
+            System.out.println(checksum);
+        }
+        return elapsed / 1e3 / in.length;
+    }
+
+    static double measureThroughput(InferenceEngine engine, float[][] in) {
+        engine.predictBatch(in);
+        long start = System.nanoTime();
+        engine.predictBatch(in);
+        return in.length / ((System.nanoTime() - start) / 1e9);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.out.println("Usage: Quantizer <network model> <calibration dataset> <quantized.ser> [calibration samples=1000] [evaluation dataset=calibration dataset]");
+            return;
+        }
+        File networkFile = new File(args[0]);
+        File calibrationFile = new File(args[1]);
+        File quantizedFile = new File(args[2]);
+        int numSamples = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+        File evaluationFile = args.length > 4 ? new File(args[4]) : calibrationFile;
+
+        Network network = ModelFile.load(networkFile.getPath());
+        if (network == null) {
+            System.out.printf("Could not load a network from %s\n", networkFile);
+            return;
+        } else if (!calibrationFile.exists() || !evaluationFile.exists()) {
+            System.out.println("Dataset does not exist!");
+            return;
+        }
+
+        Dataset calibration = Dataset.open(calibrationFile);
+        long start = System.nanoTime();
+        QuantizedPredictor quantized = network.quantize(calibration, numSamples, CALIBRATION_SEED);
+        System.out.printf("Calibrated on %d samples in %.2f s\n", Math.min(numSamples, calibration.size()), (System.nanoTime() - start) / 1e9);
+        if (!SerializationUtils.serialize(quantized, quantizedFile.getPath())) {
+            return;
+        }
+
+        Dataset evaluation = Dataset.open(evaluationFile);
+        if (evaluation.size() == 0) {
+            System.out.println("Dataset does not have any training examples!");
+            return;
+        }
+        float[][] in = new float[evaluation.size()][evaluation.getNumFeatures()];
+        int[] labels = new int[evaluation.size()];
+        double[] sample = new double[evaluation.getNumFeatures()];
+        for (int file = 0; file < in.length; ++file) {
+            labels[file] = evaluation.readSample(file, sample, 0);
+            for (int elem = 0; elem < sample.length; ++elem) {
+                in[file][elem] = (float) sample[elem];
+            }
+        }
+
+        Predictor predictor = network.createPredictor();
+        String floatName = network.getPrecision().name().toLowerCase();
+        int[] floatPreds = predictor.predictBatch(in);
+        int[] quantPreds = quantized.predictBatch(in);
+        int numAgree = 0;
+        for (int file = 0; file < in.length; ++file) {
+            if (floatPreds[file] == quantPreds[file]) {
+                ++numAgree;
+            }
+        }
+        double floatAccuracy = accuracy(floatPreds, labels);
+        double quantAccuracy = accuracy(quantPreds, labels);
+        System.out.printf("Accuracy on %d samples: %s %.2f%%, int8 %.2f%% (%+.2f points), agreement %.2f%%\n", in.length, floatName, floatAccuracy, quantAccuracy, quantAccuracy - floatAccuracy, numAgree * 100.0 / in.length);
+        System.out.printf("Model size: %s %d bytes, int8 %d bytes (%.2fx smaller)\n", floatName, networkFile.length(), quantizedFile.length(), networkFile.length() / (double) quantizedFile.length());
+
+        double floatLatency = measureLatencyMicros(predictor, in);
+        double quantLatency = measureLatencyMicros(quantized, in);
+        System.out.printf("Latency per sample: %s %.2f us, int8 %.2f us (%.2fx faster)\n", floatName, floatLatency, quantLatency, floatLatency / quantLatency);
+        double floatThroughput = measureThroughput(predictor, in);
+        double quantThroughput = measureThroughput(quantized, in);
+        System.out.printf("Batch throughput: %s %.0f samples/s, int8 %.0f samples/s (%.2fx)\n", floatName, floatThroughput, quantThroughput, quantThroughput / floatThroughput);
+    }
+}
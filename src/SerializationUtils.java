@@ -1,14 +1,12 @@
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 
 class SerializationUtils {
 
     static boolean serialize(Object obj, String fileName) {
         try {
-            FileOutputStream fos = new FileOutputStream(fileName);
-            BufferedOutputStream bos = new BufferedOutputStream(fos);
-            ObjectOutputStream oos = new ObjectOutputStream(bos);
-            oos.writeObject(obj);
-            oos.close();
+            write(obj, new File(fileName));
             System.out.println("Done! Saved to the file.");
             return true;
         } catch (IOException e) {
@@ -17,6 +15,17 @@ class SerializationUtils {
         }
     }
 
+    static void write(Object obj, File file) throws IOException {
+        File tempFile = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tempFile)) {
+            ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(fos));
+            oos.writeObject(obj);
+            oos.flush();
+            fos.getFD().sync();
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
     static Object deserialize(String fileName) {
         try {
             FileInputStream fis = new FileInputStream(fileName);
@@ -0,0 +1,104 @@
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+class ServerMetrics {
+
+    static final double[] LATENCY_BUCKETS = {0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1.0, 2.5};
+    static final double[] BATCH_BUCKETS = {1, 2, 4, 8, 16, 32, 64, 128, 256};
+    private final Map<String, LongAdder> requests = new ConcurrentHashMap<>();
+    private final Histogram latency = new Histogram(LATENCY_BUCKETS);
+    private final Histogram batchSizes = new Histogram(BATCH_BUCKETS);
+    private final LongAdder predictions = new LongAdder();
+    private final LongAdder reloads = new LongAdder();
+    private final LongAdder reloadFailures = new LongAdder();
+    private volatile long modelLoadedMillis = System.currentTimeMillis();
+
+    void recordRequest(String endpoint, int status, long nanos) {
+        requests.computeIfAbsent(String.format("endpoint=\"%s\",status=\"%d\"", endpoint, status), key -> new LongAdder()).increment();
+        if ("/predict".equals(endpoint)) {
+            latency.record(nanos / 1e9);
+        }
+    }
+
+    void recordBatch(int size) {
+        batchSizes.record(size);
+        predictions.add(size);
+    }
+
+    void recordReload(boolean succeeded) {
+        if (succeeded) {
+            reloads.increment();
+            modelLoadedMillis = System.currentTimeMillis();
+        } else {
+            reloadFailures.increment();
+        }
+    }
+
+    String toPrometheus(int queueDepth) {
+        StringBuilder out = new StringBuilder();
+        out.append("# HELP inference_requests_total HTTP requests handled, by endpoint and status.\n");
+        out.append("# TYPE inference_requests_total counter\n");
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(requests).entrySet()) {
+            out.append(String.format("inference_requests_total{%s} %d\n", entry.getKey(), entry.getValue().sum()));
+        }
+        out.append("# HELP inference_request_duration_seconds Latency of /predict requests.\n");
+        out.append("# TYPE inference_request_duration_seconds histogram\n");
+        latency.append(out, "inference_request_duration_seconds");
+        out.append("# HELP inference_batch_size Samples per batched forward pass.\n");
+        out.append("# TYPE inference_batch_size histogram\n");
+        batchSizes.append(out, "inference_batch_size");
+        out.append("# HELP inference_predictions_total Samples run through the network.\n");
+        out.append("# TYPE inference_predictions_total counter\n");
+        out.append(String.format("inference_predictions_total %d\n", predictions.sum()));
+        out.append("# HELP inference_queue_depth Samples waiting for the micro-batcher.\n");
+        out.append("# TYPE inference_queue_depth gauge\n");
+        out.append(String.format("inference_queue_depth %d\n", queueDepth));
+        out.append("# HELP inference_model_reloads_total Model reloads, by outcome.\n");
+        out.append("# TYPE inference_model_reloads_total counter\n");
+        out.append(String.format("inference_model_reloads_total{outcome=\"success\"} %d\n", reloads.sum()));
+        out.append(String.format("inference_model_reloads_total{outcome=\"failure\"} %d\n", reloadFailures.sum()));
+        out.append("# HELP inference_model_loaded_timestamp_seconds When the current model was loaded.\n");
+        out.append("# TYPE inference_model_loaded_timestamp_seconds gauge\n");
+        out.append(String.format(Locale.ROOT, "inference_model_loaded_timestamp_seconds %.3f\n", modelLoadedMillis / 1e3));
+        return out.toString();
+    }
+}
+
+class Histogram {
+
+    private final double[] bounds;
+    private final LongAdder[] counts;
+    private final DoubleAdder sum = new DoubleAdder();
+
+    Histogram(double[] bounds) {
+        this.bounds = bounds;
+        this.counts = new LongAdder[bounds.length + 1];
+        for (int bucket = 0; bucket < counts.length; ++bucket) {
+            counts[bucket] = new LongAdder();
+        }
+    }
+
+    void record(double val) {
+        int bucket = 0;
+        while (bucket < bounds.length && val > bounds[bucket]) {
+            ++bucket;
+        }
+        counts[bucket].increment();
+        sum.add(val);
+    }
+
+    void append(StringBuilder out, String name) {
+        long cumulative = 0;
+        for (int bucket = 0; bucket < counts.length; ++bucket) {
+            cumulative += counts[bucket].sum();
+            String bound = bucket < bounds.length ? String.format(Locale.ROOT, "%s", bounds[bucket]) : "+Inf";
+            out.append(String.format("%s_bucket{le=\"%s\"} %d\n", name, bound, cumulative));
+        }
+        out.append(String.format(Locale.ROOT, "%s_sum %s\n", name, sum.sum()));
+        out.append(String.format("%s_count %d\n", name, cumulative));
+    }
+}
@@ -0,0 +1,191 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+class TrainingController implements AutoCloseable {
+
+    static final int EVAL_CHUNK = Predictor.MAX_BATCH;
+    private final double validationFraction;
+    private final int evalInterval;
+    private final int patience;
+    private final double minDelta;
+    private final double targetAccuracy;
+    private final File checkpointFile;
+    private float[][] validationIn;
+    private int[] validationLabels;
+    private ExecutorService executor;
+    private long startTime;
+    private double bestAccuracy = -1;
+    private int bestEpoch;
+    private int evalsSinceBest;
+    private int numEvals;
+    private double evalSecs;
+    private double targetSecs = -1;
+    private long targetSamples;
+
+    TrainingController(double validationFraction, int evalInterval, int patience, double minDelta, double targetAccuracy, File checkpointFile) {
+        if (!(validationFraction > 0 && validationFraction < 1)) {
+            throw new IllegalArgumentException(String.format("Validation fraction should be in range (0, 1) (%f)", validationFraction));
+        } else if (evalInterval < 0 || patience < 0) {
+            throw new IllegalArgumentException(String.format("Cannot have a negative validation interval (%d) or patience (%d)", evalInterval, patience));
+        } else if (!(minDelta >= 0)) {
+            throw new IllegalArgumentException(String.format("Minimum improvement should be >= 0 (%f)", minDelta));
+        } else if (!(targetAccuracy <= 100)) {
+            throw new IllegalArgumentException(String.format("Target accuracy should be <= 100%% (%f)", targetAccuracy));
+        }
+        this.validationFraction = validationFraction;
+        this.evalInterval = evalInterval;
+        this.patience = patience;
+        this.minDelta = minDelta;
+        this.targetAccuracy = targetAccuracy;
+        this.checkpointFile = checkpointFile;
+    }
+
+    int[] split(Dataset dataset, int[] order, int numThreads) throws IOException {
+        return split(dataset, order, (int) Math.round(order.length * validationFraction), numThreads);
+    }
+
+    int[] resume(Dataset dataset, int[] trainOrder, int numThreads) throws IOException {
+        boolean[] training = new boolean[dataset.size()];
+        for (int file : trainOrder) {
+            training[file] = true;
+        }
+        int[] order = new int[dataset.size()];
+        int numValidation = 0;
+        for (int file = 0; file < training.length; ++file) {
+            if (!training[file]) {
+                order[numValidation++] = file;
+            }
+        }
+        System.arraycopy(trainOrder, 0, order, numValidation, trainOrder.length);
+        return split(dataset, Arrays.copyOf(order, numValidation + trainOrder.length), numValidation, numThreads);
+    }
+
+    private int[] split(Dataset dataset, int[] order, int numValidation, int numThreads) throws IOException {
+        if (numValidation < 1 || numValidation >= order.length) {
+            throw new IllegalArgumentException(String.format("Cannot hold out %d of %d samples for validation", numValidation, order.length));
+        }
+        validationIn = new float[numValidation][dataset.getNumFeatures()];
+        validationLabels = new int[numValidation];
+        double[] sample = new double[dataset.getNumFeatures()];
+        for (int file = 0; file < numValidation; ++file) {
+            validationLabels[file] = dataset.readSample(order[file], sample, 0);
+            for (int elem = 0; elem < sample.length; ++elem) {
+                validationIn[file][elem] = (float) sample[elem];
+            }
+        }
+        executor = Executors.newFixedThreadPool(numThreads);
+        startTime = System.nanoTime();
+        return Arrays.copyOfRange(order, numValidation, order.length);
+    }
+
+    int getNumValidation() {
+        return validationLabels.length;
+    }
+
+    boolean shouldEvaluate(long batchesTrained) {
+        return evalInterval > 0 && batchesTrained % evalInterval == 0;
+    }
+
+    boolean evaluate(Network network, TrainingState state, int epoch, long samplesTrained) throws IOException {
+        long evalStart = System.nanoTime();
+        Predictor predictor = network.createPredictor();
+        Loss lossType = network.getLossType();
+        List<Future<double[]>> futures = new ArrayList<>();
+        for (int start = 0; start < validationIn.length; start += EVAL_CHUNK) {
+            int chunkStart = start;
+            int chunkEnd = Math.min(validationIn.length, start + EVAL_CHUNK);
+            futures.add(executor.submit(() -> evaluateChunk(predictor, lossType, chunkStart, chunkEnd)));
+        }
+        double numCorrect = 0;
+        double lossSum = 0.0;
+        for (Future<double[]> future : futures) {
+            double[] res = awaitChunk(future);
+            numCorrect += res[0];
+            lossSum += res[1];
+        }
+        evalSecs += (System.nanoTime() - evalStart) / 1e9;
+        ++numEvals;
+
+        double elapsedSecs = (System.nanoTime() - startTime) / 1e9;
+        double accuracy = numCorrect * 100 / validationIn.length;
+        System.out.printf("\nValidation at epoch %d (%d samples, %.2f s): accuracy %.2f%%, loss %.7f", epoch + 1, samplesTrained, elapsedSecs, accuracy, lossSum / validationIn.length);
+        if (targetAccuracy > 0 && targetSecs < 0 && accuracy >= targetAccuracy) {
+            targetSecs = elapsedSecs;
+            targetSamples = samplesTrained;
+            System.out.printf(", reached target %.2f%%", targetAccuracy);
+        }
+        if (accuracy > bestAccuracy + minDelta) {
+            bestAccuracy = accuracy;
+            bestEpoch = epoch;
+            evalsSinceBest = 0;
+            if (checkpointFile != null) {
+                ModelFile.write(network.snapshot(state), checkpointFile);
+                System.out.printf(", checkpoint saved to %s", checkpointFile);
+            }
+        } else {
+            ++evalsSinceBest;
+        }
+        System.out.println();
+        return patience > 0 && evalsSinceBest >= patience;
+    }
+
+    private double[] evaluateChunk(Predictor predictor, Loss lossType, int start, int end) {
+        double[][] probs = predictor.predictProbabilitiesBatch(Arrays.copyOfRange(validationIn, start, end));
+        double[] actual = new double[predictor.getNumOutputs()];
+        double[] res = new double[2];
+        for (int sample = 0; sample < probs.length; ++sample) {
+            int label = validationLabels[start + sample];
+            int pred = 0;
+            for (int neuron = 1; neuron < probs[sample].length; ++neuron) {
+                if (probs[sample][neuron] > probs[sample][pred]) {
+                    pred = neuron;
+                }
+            }
+            if (pred == label) {
+                ++res[0];
+            }
+            Network.oneHotEncode(label, actual, 0, actual.length);
+            res[1] += Loss.getLossOf(lossType, actual, probs[sample]);
+        }
+        return res;
+    }
+
+    private static double[] awaitChunk(Future<double[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while validating!");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    void report(boolean stoppedEarly) {
+        double elapsedSecs = (System.nanoTime() - startTime) / 1e9;
+        if (stoppedEarly) {
+            System.out.printf("Stopped early: no improvement above %.2f%% in %d evaluations\n", minDelta, patience);
+        }
+        System.out.printf("Best validation accuracy %.2f%% after epoch %d on %d held-out samples (%d evaluations, %.2f s of %.2f s spent validating)\n", bestAccuracy, bestEpoch + 1, validationIn.length, numEvals, evalSecs, elapsedSecs);
+        if (targetSecs >= 0) {
+            System.out.printf("Time to %.2f%% validation accuracy: %.2f s (%d samples)\n", targetAccuracy, targetSecs, targetSamples);
+        } else if (targetAccuracy > 0) {
+            System.out.printf("Target validation accuracy %.2f%% not reached\n", targetAccuracy);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}